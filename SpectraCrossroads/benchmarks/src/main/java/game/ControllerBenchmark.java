@@ -0,0 +1,103 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicController;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicControllerReaderWriter;
+import tau.smlab.syntech.jtlv.BDDPackage;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the cost of the spectra controller: reading the synthesized controller of out/
+ * and a single step, which computes the successors of the current state (ctrl.succ),
+ * restricts them to the cars on the board and enumerates them.
+ * the BDD variables are global, so every fork reads the controller into a fresh JVM.
+ */
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+    @Param({"out/"})
+    public String controllerPath;
+    /**
+     * the cars waiting in the vertical and in the horizontal road.
+     */
+    @Param({"0", "2", "5"})
+    public int waiting;
+    /**
+     * the way the controller picks among the possible next states, see SpectraController.
+     */
+    @Param({"uniform", "walk"})
+    public String choice;
+    private SpectraController uncached;
+    private SpectraController cached;
+    private SplittableRandom inputs;
+    private int verticalWaiting = 0;
+    private int horizontalWaiting = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        boolean randomWalk = "walk".equals(choice);
+        uncached = new SpectraController(controllerPath, 0, randomWalk, new SplittableRandom(1));
+        cached = new SpectraController(controllerPath, SpectraController.DEFAULT_CACHE_CAPACITY, randomWalk,
+                new SplittableRandom(1));
+        uncached.step(0, 0, false, false);
+        cached.step(0, 0, false, false);
+        inputs = new SplittableRandom(2);
+    }
+
+    /**
+     * reads the controller once per fork, so the numbers are the load of a cold JVM like at the start of a game.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(5)
+    public SymbolicController load() throws IOException {
+        BDDPackage.setCurrPackage(BDDPackage.JTLV);
+        return SymbolicControllerReaderWriter.readSymbolicController(controllerPath);
+    }
+
+    /**
+     * a step without the successor cache: every step runs the BDD operations.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Fork(1)
+    public SystemState step() {
+        return uncached.step(waiting, waiting, false, false);
+    }
+
+    /**
+     * a step with the successor cache, with the queues changing randomly up to the waiting parameter.
+     * the spec assumes a queue only gets shorter while its light lets the cars go, so the changes keep to that.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Fork(1)
+    public SystemState cachedStep() {
+        SystemState systemState = cached.step(verticalWaiting, horizontalWaiting, false, false);
+        verticalWaiting = nextWaiting(verticalWaiting, systemState.getVerticalLight());
+        horizontalWaiting = nextWaiting(horizontalWaiting, systemState.getHorizontalLight());
+        return systemState;
+    }
+
+    private int nextWaiting(int current, Color light) {
+        int min = light.equals(Color.GREEN) || light.equals(Color.OFF) ? 0 : current;
+        return min + inputs.nextInt(waiting + 1 - min);
+    }
+}
@@ -0,0 +1,88 @@
+package game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the cost of a tick of the game board and of drawing it, for boards of grid x grid intersections
+ * with about the given number of cars waiting at every intersection.
+ * the lights are red and no more cars enter once the queues are filled,
+ * so the board stays the same while it is measured: the cars stand, but every car is still checked every tick.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class GameBoardBenchmark {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    @Param({"1", "3"})
+    public int grid;
+    @Param({"0", "8", "32"})
+    public int depth;
+    private GameBoard gameBoard;
+    private BoardFrame frame;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() throws IOException {
+        gameBoard = new GameBoard(new SplittableRandom(1), (random, direction, road) -> new UniformArrivals(random),
+                grid, grid, 20, 15);
+        gameBoard.setRegions(1, 1, 1);
+        for (int i = 0; i < gameBoard.getIntersectionCount(); i++) {
+            for (Direction direction : DIRECTIONS) {
+                gameBoard.getIntersection(i).getEntrance(direction).setLight(Color.RED);
+            }
+        }
+        gameBoard.setVerticalFrequency(10, 10);
+        gameBoard.setHorizontalFrequency(10, 10);
+        int target = depth * gameBoard.getIntersectionCount();
+        for (int tick = 0; tick < 100000 && gameBoard.getWaitingCount() < target; tick++) {
+            gameBoard.updateGameBoard();
+        }
+        gameBoard.setVerticalFrequency(Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2);
+        gameBoard.setHorizontalFrequency(Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2);
+        for (int tick = 0; tick < 2000; tick++) {
+            gameBoard.updateGameBoard();
+        }
+        frame = gameBoard.snapshot(0);
+        image = new BufferedImage(gameBoard.getWidth(), gameBoard.getHeight(), BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        gameBoard.draw(graphics, frame);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public GameBoard update() {
+        gameBoard.updateGameBoard();
+        return gameBoard;
+    }
+
+    /**
+     * draws a frame into an offscreen image, like the UI does into the window.
+     */
+    @Benchmark
+    public BufferedImage draw() {
+        gameBoard.draw(graphics, frame);
+        return image;
+    }
+}
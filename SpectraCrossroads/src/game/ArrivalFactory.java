@@ -0,0 +1,20 @@
+package game;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * creates the arrival process of every road end of a board.
+ *
+ */
+public interface ArrivalFactory {
+
+    /**
+     * @param random the source of the arrival times, shared by all the road ends of the board
+     * @param direction the direction the arriving cars drive in
+     * @param road the row of a horizontal road or the column of a vertical road
+     * @return a process that still needs its interval, see ArrivalProcess.setInterval
+     * @throws IOException if the process cannot read its input
+     */
+    ArrivalProcess create(SplittableRandom random, Direction direction, int road) throws IOException;
+}
@@ -0,0 +1,38 @@
+package game;
+
+/**
+ * decides when cars enter the board at one end of a road.
+ * the ticks are the ticks of the simulation, starting at 0.
+ */
+public interface ArrivalProcess {
+
+    /**
+     * @param tick the tick of the last car or of the last tick returned, or the tick the process (re)starts at
+     * @return the tick of the next car, after the given tick. Long.MAX_VALUE if no more cars arrive.
+     * a process that does not know its next car yet may instead return a tick to be asked again at, see bringsCar
+     */
+    long nextArrival(long tick);
+
+    /**
+     * @return false if the tick last returned by nextArrival brings no car and only asks to be called again at it.
+     * the default always brings a car
+     */
+    default boolean bringsCar() {
+        return true;
+    }
+
+    /**
+     * sets the range of ticks between two cars, as set by the config or the frequency sliders.
+     * a process not driven by a range of intervals ignores it.
+     * @param min
+     * @param max
+     */
+    void setInterval(int min, int max);
+
+    /**
+     * releases the input of the process, e.g. the file of a trace.
+     * the default has nothing to release.
+     */
+    default void close() {
+    }
+}
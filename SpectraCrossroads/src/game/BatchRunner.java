@@ -0,0 +1,265 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * evaluates a controller by running many independent headless simulations on all cores.
+ * every run gets its own seed (split from the seed of the config) and the arrival parameters of its scenario,
+ * and the statistics of the runs are aggregated per scenario.
+ *
+ * takes the parameters of SimulationConfig, e.g.
+ * controller-snapshot=out/controller.snapshot runs=1000 ticks=100000 threads=8 scenarios=scenarios.csv
+ * a scenarios file has one scenario per line:
+ * verticalMin,verticalMax,horizontalMin,horizontalMax,controllerInterval
+ * without it all runs use the arrival parameters of the config.
+ *
+ * the symbolic controller works on global BDD state, so batch runs need a table compiled by ControllerCompiler
+ * or the controller exported from it (controller-export=true or a controller-snapshot),
+ * which is loaded once and shared by all runs.
+ * a table compiled below the CarsCount bound of the spec saturates the waiting counts,
+ * so its results are not the results of the synthesized controller; the runner warns about it.
+ * every run is closed when it ends, so its metrics and threads do not outlive it.
+ */
+public class BatchRunner {
+    private SimulationConfig config;
+    private ControllerFactory controllers;
+
+    public BatchRunner(SimulationConfig config) throws IOException {
+        if (config.getControllerTable() == null && config.getControllerSnapshot() == null
+                && !config.isControllerExport()) {
+            throw new IllegalArgumentException("batch runs need a controller-table compiled by ControllerCompiler,"
+                    + " a controller-snapshot or controller-export=true");
+        }
+        if (config.getTelemetry() != null) {
+            throw new IllegalArgumentException("telemetry is written by single runs, the runs of a batch would share the file");
+        }
+        this.config = config;
+        if (config.getControllerTable() != null) {
+            CompiledController table = CompiledController.load(config.getControllerTable(),
+                    new SplittableRandom(config.getSeed()));
+            warnIfSaturated(table.getMaxCars());
+            this.controllers = table::fork;
+        } else {
+            ControllerExport export = config.getControllerSnapshot() != null
+                    ? ControllerExport.load(config.getControllerSnapshot())
+                    : ControllerExport.of(config.getControllerPath());
+            this.controllers = random -> new ExportedController(export, random);
+        }
+    }
+
+    /**
+     * runs all the scenarios and aggregates their results.
+     * the runs are independent and aggregated in submission order,
+     * so the results do not depend on the number of threads.
+     * @param scenarios
+     * @return a summary per scenario
+     * @throws InterruptedException
+     */
+    public List<Summary> run(List<SimulationConfig> scenarios) throws InterruptedException {
+        SplittableRandom seeds = new SplittableRandom(config.getSeed());
+        ExecutorService pool = Executors.newWorkStealingPool(config.getThreads());
+        try {
+            List<List<Future<RunStatistics>>> results = new ArrayList<>();
+            for (SimulationConfig scenario : scenarios) {
+                List<Future<RunStatistics>> runs = new ArrayList<>();
+                for (int i = 0; i < config.getRuns(); i++) {
+                    SimulationConfig runConfig = scenario.copy();
+                    runConfig.set("seed", String.valueOf(seeds.nextLong()));
+                    runs.add(pool.submit(runOf(runConfig)));
+                }
+                results.add(runs);
+            }
+            List<Summary> summaries = new ArrayList<>();
+            for (int i = 0; i < scenarios.size(); i++) {
+                Summary summary = new Summary(scenarios.get(i));
+                for (Future<RunStatistics> run : results.get(i)) {
+                    try {
+                        summary.add(run.get());
+                    } catch (ExecutionException e) {
+                        summary.addFailure(e.getCause());
+                    }
+                }
+                summaries.add(summary);
+            }
+            return summaries;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * warns if the table saturates the waiting counts of the spec of the controller folder.
+     * nothing is checked if the folder has no spec.
+     * @param maxCars the maxCars the table was compiled for
+     * @throws IOException
+     */
+    private void warnIfSaturated(int maxCars) throws IOException {
+        if (!new File(config.getControllerPath(), "spec.zip").isFile()) {
+            return;
+        }
+        int specMax = SpectraController.getMaxCarsFromSpectraFile(config.getControllerPath());
+        if (maxCars < specMax) {
+            System.err.println("WARNING: the controller table was compiled for maxCars " + maxCars
+                    + " below the CarsCount bound " + specMax + " of the spec,"
+                    + " the results are not the results of the synthesized controller");
+        }
+    }
+
+    private Callable<RunStatistics> runOf(SimulationConfig runConfig) {
+        return () -> {
+            if (runConfig.isEventEngine()) {
+                try (EventSimulation simulation = new EventSimulation(runConfig, controllers)) {
+                    simulation.advance(runConfig.getTicks());
+                    return simulation.getStatistics();
+                }
+            }
+            try (Simulation simulation = new Simulation(runConfig, controllers)) {
+                for (long tick = 0; tick < runConfig.getTicks(); tick++) {
+                    simulation.step();
+                }
+                return simulation.getStatistics();
+            }
+        };
+    }
+
+    /**
+     * reads the scenarios file of the config.
+     * empty lines and lines starting with # are skipped.
+     * @return the scenarios, or just the config itself if it has no scenarios file
+     * @throws IOException
+     */
+    public List<SimulationConfig> readScenarios() throws IOException {
+        List<SimulationConfig> scenarios = new ArrayList<>();
+        if (config.getScenarios() == null) {
+            scenarios.add(config);
+            return scenarios;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(config.getScenarios()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] values = line.split("\\s*,\\s*");
+                if (values.length != 5) {
+                    throw new IOException("expected verticalMin,verticalMax,horizontalMin,horizontalMax,controllerInterval"
+                            + " but got: " + line);
+                }
+                SimulationConfig scenario = config.copy();
+                scenario.set("vertical-min", values[0]);
+                scenario.set("vertical-max", values[1]);
+                scenario.set("horizontal-min", values[2]);
+                scenario.set("horizontal-max", values[3]);
+                scenario.set("controller-interval", values[4]);
+                scenario.checkIntervals();
+                scenarios.add(scenario);
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * the aggregated statistics of all the runs of a scenario.
+     */
+    public static class Summary {
+        private SimulationConfig scenario;
+        private Statistic throughput = new Statistic();
+        private Statistic meanWaiting = new Statistic();
+        private Statistic maxWaiting = new Statistic();
+        private Statistic meanWaitTicks = new Statistic();
+        private int failures = 0;
+        private Throwable firstFailure;
+
+        Summary(SimulationConfig scenario) {
+            this.scenario = scenario;
+        }
+
+        void add(RunStatistics run) {
+            throughput.add(run.getThroughputPerMinute());
+            meanWaiting.add(run.getMeanWaiting());
+            maxWaiting.add(run.getMaxWaiting());
+            meanWaitTicks.add(run.getMeanWaitTicks());
+        }
+
+        void addFailure(Throwable failure) {
+            if (failures++ == 0) {
+                firstFailure = failure;
+            }
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            String result = String.format("vertical %d..%d, horizontal %d..%d, interval %d: %d runs",
+                    scenario.getVerticalMin(), scenario.getVerticalMax(),
+                    scenario.getHorizontalMin(), scenario.getHorizontalMax(), scenario.getControllerInterval(),
+                    throughput.count);
+            if (throughput.count == 0) {
+                result += String.format("%n  no successful runs");
+            } else {
+                result += String.format("%n  throughput/min %s%n  mean queue     %s%n  max queue      %s%n  mean wait      %s",
+                        throughput, meanWaiting, maxWaiting, meanWaitTicks);
+            }
+            if (failures > 0) {
+                result += String.format("%n  %d failed runs, first: %s", failures, firstFailure);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * running mean, standard deviation, minimum and maximum (Welford's algorithm).
+     */
+    private static class Statistic {
+        private long count = 0;
+        private double mean = 0;
+        private double m2 = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        @Override
+        public String toString() {
+            double sd = count > 1 ? Math.sqrt(m2 / (count - 1)) : 0;
+            return String.format("mean %8.2f  sd %7.2f  min %8.2f  max %8.2f", mean, sd, min, max);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        SimulationConfig config = SimulationConfig.fromArgs(args);
+        BatchRunner runner = new BatchRunner(config);
+        List<SimulationConfig> scenarios = runner.readScenarios();
+        long start = System.nanoTime();
+        List<Summary> summaries = runner.run(scenarios);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Summary summary : summaries) {
+            System.out.println(summary);
+        }
+        System.out.printf("%d runs of %d ticks on %d threads in %.1f sec, seed %d%n",
+                scenarios.size() * config.getRuns(), config.getTicks(), config.getThreads(), seconds, config.getSeed());
+    }
+}
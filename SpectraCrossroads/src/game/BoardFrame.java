@@ -0,0 +1,70 @@
+package game;
+
+/**
+ * an immutable snapshot of everything on the board that changes between ticks:
+ * the positions of the cars, the traffic lights and the waiting counters of every intersection.
+ * the simulation publishes a frame after a tick and the UI paints the latest published frame,
+ * so the UI never reads the queues the simulation is changing
+ * and the simulation does not have to wait for the UI.
+ */
+public class BoardFrame {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private final long tick;
+    private final int[] vehicleX;
+    private final int[] vehicleY;
+    private final byte[] vehicleDirection;
+    private final Color[] lights;
+    private final int[] waiting;
+
+    /**
+     * constructor.
+     * the arrays are owned by the frame from now on and must not be changed by the caller.
+     * @param tick
+     * @param vehicleX
+     * @param vehicleY
+     * @param vehicleDirection the ordinal of the direction of each car
+     * @param lights the traffic light drawn for each direction of each intersection,
+     *               by intersection index * 4 + direction ordinal
+     * @param waiting the number of cars waiting in each direction of each intersection, indexed like lights
+     */
+    BoardFrame(long tick, int[] vehicleX, int[] vehicleY, byte[] vehicleDirection, Color[] lights, int[] waiting) {
+        this.tick = tick;
+        this.vehicleX = vehicleX;
+        this.vehicleY = vehicleY;
+        this.vehicleDirection = vehicleDirection;
+        this.lights = lights;
+        this.waiting = waiting;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getVehicleCount() {
+        return vehicleX.length;
+    }
+
+    public int getVehicleX(int vehicle) {
+        return vehicleX[vehicle];
+    }
+
+    public int getVehicleY(int vehicle) {
+        return vehicleY[vehicle];
+    }
+
+    public Direction getVehicleDirection(int vehicle) {
+        return DIRECTIONS[vehicleDirection[vehicle]];
+    }
+
+    public int getIntersectionCount() {
+        return lights.length / DIRECTIONS.length;
+    }
+
+    public Color getLight(int intersection, Direction direction) {
+        return lights[intersection * DIRECTIONS.length + direction.ordinal()];
+    }
+
+    public int getWaiting(int intersection, Direction direction) {
+        return waiting[intersection * DIRECTIONS.length + direction.ordinal()];
+    }
+}
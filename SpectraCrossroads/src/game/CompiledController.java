@@ -0,0 +1,231 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * a spectra controller compiled into an explicit-state lookup table by ControllerCompiler.
+ * every reachable controller state is a row; for each environment input a row holds the list of
+ * successor rows the controller allows, so a step is an array lookup instead of BDD operations.
+ * the table is immutable after loading, only the current state belongs to this instance.
+ *
+ * the table covers waiting counts up to the maxCars it was compiled with,
+ * larger counts are reported to the controller as maxCars.
+ * a table compiled below the CarsCount bound of the spec therefore behaves differently from the spec's controller.
+ */
+public class CompiledController implements TrafficController {
+    static final int MAGIC = 0x53435442; // "SCTB"
+    static final int VERSION = 1;
+    private static final Color[] COLORS = Color.values();
+
+    private int maxCars;
+    private int envInputs;
+    private byte[] sysInfo;
+    private int initialRow;
+    private int[] rowState;
+    private int[] offsets;
+    private int[] successors;
+    private int currentRow = -1;
+    private SplittableRandom random;
+
+    private CompiledController() {
+    }
+
+    /**
+     * loads a table written by ControllerCompiler.
+     * @param file
+     * @param random the source of the choices among the possible next states
+     * every count is checked against the bytes left in the file before its array is allocated,
+     * and every row, system state and successor against the rows and system states of the table,
+     * so a damaged file fails with an IOException instead of running out of memory or out of an array.
+     * @param file
+     * @param random the source of the choices among the possible next states
+     * @return a controller in its initial state
+     * @throws IOException if the file is not a controller table of a supported version or is corrupt
+     */
+    public static CompiledController load(String file, SplittableRandom random) throws IOException {
+        CompiledController controller = new CompiledController();
+        controller.random = random;
+        long left = new File(file).length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a compiled controller table");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported controller table version " + version + " in " + file);
+            }
+            controller.maxCars = in.readInt();
+            if (controller.maxCars < 0 || controller.maxCars > ControllerExport.MAX_CARS) {
+                throw corrupt(file, "maxCars " + controller.maxCars + " is not in 0.." + ControllerExport.MAX_CARS);
+            }
+            int envInputs = envInputs(controller.maxCars);
+            controller.envInputs = envInputs;
+            int sysCount = in.readInt();
+            left -= 16;
+            checkCount(file, sysCount, 4, left, "system states");
+            controller.sysInfo = new byte[sysCount * 4];
+            in.readFully(controller.sysInfo);
+            left -= controller.sysInfo.length;
+            for (int sys = 0; sys < sysCount; sys++) {
+                if (controller.sysInfo[sys * 4] < 0 || controller.sysInfo[sys * 4] >= COLORS.length
+                        || controller.sysInfo[sys * 4 + 1] < 0 || controller.sysInfo[sys * 4 + 1] >= COLORS.length) {
+                    throw corrupt(file, "system state " + sys + " has no colors");
+                }
+            }
+            int rows = in.readInt();
+            controller.initialRow = in.readInt();
+            left -= 8;
+            // a row takes its state and an offset for every environment input
+            checkCount(file, rows, 4 * (envInputs + 1L), left, "rows");
+            if (controller.initialRow < 0 || controller.initialRow >= rows) {
+                throw corrupt(file, "the initial row " + controller.initialRow + " is not one of " + rows + " rows");
+            }
+            controller.rowState = readInts(in, rows);
+            for (int row = 0; row < rows; row++) {
+                if (controller.rowState[row] < 0 || controller.rowState[row] / envInputs >= sysCount) {
+                    throw corrupt(file, "row " + row + " has no state");
+                }
+            }
+            controller.offsets = readInts(in, rows * envInputs + 1);
+            left -= 4L * (rows + rows * envInputs + 1);
+            int[] offsets = controller.offsets;
+            if (offsets[0] != 0) {
+                throw corrupt(file, "the successors do not start at 0");
+            }
+            for (int slot = 1; slot < offsets.length; slot++) {
+                if (offsets[slot] < offsets[slot - 1]) {
+                    throw corrupt(file, "the successors of slot " + slot + " start before the ones of the slot before");
+                }
+            }
+            checkCount(file, offsets[offsets.length - 1], 4, left, "successors");
+            controller.successors = readInts(in, offsets[offsets.length - 1]);
+            for (int successor : controller.successors) {
+                if (successor < 0 || successor >= rows) {
+                    throw corrupt(file, "successor " + successor + " is not one of " + rows + " rows");
+                }
+            }
+        } catch (EOFException e) {
+            throw corrupt(file, "the file is truncated");
+        }
+        return controller;
+    }
+
+    private static IOException corrupt(String file, String reason) {
+        return new IOException("corrupt table " + file + ": " + reason);
+    }
+
+    /**
+     * checks the number of elements of an array against the bytes left in the file.
+     * @param file
+     * @param count
+     * @param bytesEach the bytes an element takes in the file
+     * @param left the bytes left in the file
+     * @param what the elements, for the message
+     * @throws IOException if the count is negative or the elements cannot fit in the rest of the file
+     */
+    private static void checkCount(String file, int count, long bytesEach, long left, String what) throws IOException {
+        if (count < 0 || count * bytesEach > left) {
+            throw corrupt(file, count + " " + what + " with " + left + " bytes left");
+        }
+    }
+
+    /**
+     * creates a controller in its initial state that shares the table of this one.
+     * the table is never modified, so controllers sharing it can be stepped on different threads.
+     * @param random the source of the choices of the new controller
+     * @return
+     */
+    public CompiledController fork(SplittableRandom random) {
+        CompiledController controller = new CompiledController();
+        controller.maxCars = maxCars;
+        controller.envInputs = envInputs;
+        controller.sysInfo = sysInfo;
+        controller.initialRow = initialRow;
+        controller.rowState = rowState;
+        controller.offsets = offsets;
+        controller.successors = successors;
+        controller.random = random;
+        return controller;
+    }
+
+    private static int[] readInts(DataInputStream in, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * the number of distinct environment inputs of a table compiled for the given maximum.
+     * @param maxCars
+     * @return
+     */
+    static int envInputs(int maxCars) {
+        return (maxCars + 1) * (maxCars + 1) * 4;
+    }
+
+    /**
+     * the index of an environment input in a row of the table.
+     * @return
+     */
+    static int envIndex(int maxCars, int verticalWaiting, int horizontalWaiting,
+                        boolean verticalCrossing, boolean horizontalCrossing) {
+        int index = verticalWaiting * (maxCars + 1) + horizontalWaiting;
+        index = index * 2 + (verticalCrossing ? 1 : 0);
+        return index * 2 + (horizontalCrossing ? 1 : 0);
+    }
+
+    @Override
+    public SystemState step(int verticalWaiting, int horizontalWaiting,
+                            boolean verticalCrossing, boolean horizontalCrossing) {
+        if (currentRow < 0) {
+            currentRow = initialRow;
+        } else {
+            verticalWaiting = verticalWaiting < maxCars ? verticalWaiting : maxCars;
+            horizontalWaiting = horizontalWaiting < maxCars ? horizontalWaiting : maxCars;
+            int slot = currentRow * envInputs + envIndex(maxCars, verticalWaiting, horizontalWaiting,
+                    verticalCrossing, horizontalCrossing);
+            int from = offsets[slot];
+            int choices = offsets[slot + 1] - from;
+            if (choices == 0) {
+                throw new IllegalStateException("the controller has no successor for vertical queue " + verticalWaiting
+                        + ", horizontal queue " + horizontalWaiting + ", vertical crossing " + verticalCrossing
+                        + ", horizontal crossing " + horizontalCrossing);
+            }
+            currentRow = successors[from + random.nextInt(choices)];
+        }
+        return getSystemState(currentRow);
+    }
+
+    /**
+     * rebuilds the system state of a row from its system part and its environment input
+     * @param row
+     * @return
+     */
+    private SystemState getSystemState(int row) {
+        int sys = rowState[row] / envInputs;
+        int env = rowState[row] % envInputs;
+        int horizontalCrossing = env & 1;
+        int verticalCrossing = (env >> 1) & 1;
+        int queues = env >> 2;
+        return new SystemState(COLORS[sysInfo[sys * 4]], COLORS[sysInfo[sys * 4 + 1]],
+                queues / (maxCars + 1), queues % (maxCars + 1),
+                sysInfo[sys * 4 + 2], sysInfo[sys * 4 + 3],
+                verticalCrossing == 1, horizontalCrossing == 1);
+    }
+
+    public int getMaxCars() {
+        return maxCars;
+    }
+
+    public int getRowCount() {
+        return rowState.length;
+    }
+}
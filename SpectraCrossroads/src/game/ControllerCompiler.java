@@ -0,0 +1,342 @@
+package game;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicController;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicControllerReaderWriter;
+import tau.smlab.syntech.jtlv.BDDPackage;
+import tau.smlab.syntech.jtlv.Env;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * compiles the symbolic controller in a folder like out/ into an explicit-state table for CompiledController.
+ * starting from the initial state, it enumerates every state the controller can reach
+ * while the waiting counts stay within maxCars, and records for each state and environment input
+ * the successor states the controller allows.
+ * the size of the table grows with (maxCars + 1)^4.
+ * maxCars defaults to the CarsCount bound of the spec. a smaller maxCars saturates the waiting counts,
+ * so the table is a different controller from the synthesized one: it keeps the queues shorter than the spec allows,
+ * and a run with it cannot be compared to a run with the BDD controller. the compiler warns about it.
+ * for a spec with a large bound, run the controller exported by ControllerExport instead.
+ *
+ * usage: ControllerCompiler [controller folder] [table file] [maxCars]
+ */
+public class ControllerCompiler {
+    private SymbolicController ctrl;
+    private BDDFactory factory;
+    private int maxCars;
+    private int envInputs;
+    private int[] unprimeVars;
+    private PackedVar[] fields;
+    private PackedVar verticalQueue;
+    private PackedVar horizontalQueue;
+    private PackedVar verticalCrossing;
+    private PackedVar horizontalCrossing;
+    private PackedVar verticalLights;
+    private PackedVar horizontalLights;
+    private PackedVar verticalBlinks;
+    private PackedVar horizontalBlinks;
+    private long envMask;
+
+    private Map<Long, Integer> rowOf = new HashMap<>();
+    private long[] rowKeys = new long[1024];
+    private int rowCount = 0;
+    private Map<Long, Integer> sysOf = new HashMap<>();
+    private byte[] sysInfo = new byte[1024];
+    private int sysCount = 0;
+    private int[] offsets = new int[1024];
+    private int[] successors = new int[1024];
+    private int successorCount = 0;
+
+    /**
+     * constructor.
+     * loads the symbolic controller and looks up the variables of the spec.
+     * @param path the folder of the synthesized controller
+     * @param maxCars the highest waiting count to compile transitions for
+     * @throws IOException
+     * @throws IllegalArgumentException if the CarsCount bound of the spec cannot be read or maxCars is not within it
+     */
+    public ControllerCompiler(String path, int maxCars) throws IOException {
+        int specMax = SpectraController.getMaxCarsFromSpectraFile(path);
+        if (specMax < 0) {
+            throw new IllegalArgumentException("cannot read the CarsCount bound from the spec in " + path
+                    + "/spec.zip, expected a declaration like type CarsCount = Int(0..30);");
+        }
+        if (maxCars < 0 || maxCars > specMax) {
+            throw new IllegalArgumentException("maxCars must be between 0 and " + specMax + " but was " + maxCars);
+        }
+        if (maxCars < specMax) {
+            System.err.println("WARNING: compiling for maxCars " + maxCars + " below the CarsCount bound " + specMax
+                    + " of the spec. waiting counts above " + maxCars + " are saturated,"
+                    + " so the table does not behave like the synthesized controller.");
+        }
+        this.maxCars = maxCars;
+        this.envInputs = CompiledController.envInputs(maxCars);
+        BDDPackage.setCurrPackage(BDDPackage.JTLV);
+        ctrl = SymbolicControllerReaderWriter.readSymbolicController(path);
+        factory = ctrl.trans().getFactory();
+        unprimeVars = Env.globalUnprimeVars().toArray();
+        Arrays.sort(unprimeVars);
+        if (unprimeVars.length > 63) {
+            throw new IllegalArgumentException("the controller has " + unprimeVars.length
+                    + " state bits, at most 63 are supported");
+        }
+        Set<String> names = new TreeSet<>(SymbolicControllerReaderWriter.readSysVarNames(path));
+        names.addAll(SymbolicControllerReaderWriter.readEnvVarNames(path));
+        fields = new PackedVar[names.size()];
+        int i = 0;
+        for (String name : names) {
+            fields[i++] = PackedVar.of(name, unprimeVars);
+        }
+        verticalQueue = PackedVar.of("carsWaitingInVerticalRoad", unprimeVars);
+        horizontalQueue = PackedVar.of("carsWaitingInHorizontalRoad", unprimeVars);
+        verticalCrossing = PackedVar.of("verticalCarCrossing", unprimeVars);
+        horizontalCrossing = PackedVar.of("horizontalCarCrossing", unprimeVars);
+        verticalLights = PackedVar.of("verticalLights", unprimeVars);
+        horizontalLights = PackedVar.of("horizontalLights", unprimeVars);
+        verticalBlinks = PackedVar.of("verticalBlinks", unprimeVars);
+        horizontalBlinks = PackedVar.of("horizontalBlinks", unprimeVars);
+        envMask = verticalQueue.getMask() | horizontalQueue.getMask() | verticalCrossing.getMask()
+                | horizontalCrossing.getMask();
+    }
+
+    /**
+     * enumerates the reachable states breadth first, starting from the same initial state
+     * SpectraController starts from.
+     */
+    public void compile() {
+        BDD initial = ctrl.initial().satOne(Env.globalUnprimeVars());
+        int initialRow = rowFor(keyOf(initial));
+        initial.free();
+        if (initialRow != 0) {
+            throw new IllegalStateException("the initial state must be the first row");
+        }
+        BDD envBound = Env.TRUE();
+        envBound.andWith(boundOf("carsWaitingInVerticalRoad"));
+        envBound.andWith(boundOf("carsWaitingInHorizontalRoad"));
+
+        int[] pairEnv = new int[64];
+        int[] pairRow = new int[64];
+        for (int row = 0; row < rowCount; row++) {
+            BDD state = cubeOf(rowKeys[row]);
+            BDD succs = ctrl.succ(state);
+            state.free();
+            BDD bounded = succs.and(envBound);
+            succs.free();
+            int pairs = 0;
+            BDD.AllSatIterator it = bounded.allsat();
+            while (it.hasNext()) {
+                byte[] profile = it.next();
+                int dontCares = 0;
+                for (int var : unprimeVars) {
+                    if (profile[var] < 0) {
+                        dontCares++;
+                    }
+                }
+                for (long combination = 0; combination < (1L << dontCares); combination++) {
+                    long key = keyOf(profile, combination);
+                    if (!isValid(key)) {
+                        continue;
+                    }
+                    if (pairs == pairEnv.length) {
+                        pairEnv = Arrays.copyOf(pairEnv, pairs * 2);
+                        pairRow = Arrays.copyOf(pairRow, pairs * 2);
+                    }
+                    pairEnv[pairs] = envIndexOf(key);
+                    pairRow[pairs] = rowFor(key);
+                    pairs++;
+                }
+            }
+            it.free();
+            bounded.free();
+            addRow(row, pairEnv, pairRow, pairs);
+            if ((row + 1) % 1000 == 0) {
+                System.out.println("compiled " + (row + 1) + " of " + rowCount + " reachable states");
+            }
+        }
+        envBound.free();
+    }
+
+    /**
+     * appends the successors of a row to the table, grouped by environment input.
+     */
+    private void addRow(int row, int[] pairEnv, int[] pairRow, int pairs) {
+        int base = row * envInputs;
+        if (offsets.length < base + envInputs + 1) {
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, base + envInputs + 1));
+        }
+        if (successors.length < successorCount + pairs) {
+            successors = Arrays.copyOf(successors, Math.max(successors.length * 2, successorCount + pairs));
+        }
+        int[] counts = new int[envInputs];
+        for (int i = 0; i < pairs; i++) {
+            counts[pairEnv[i]]++;
+        }
+        int next = successorCount;
+        for (int env = 0; env < envInputs; env++) {
+            offsets[base + env] = next;
+            next += counts[env];
+            counts[env] = offsets[base + env];
+        }
+        offsets[base + envInputs] = next;
+        for (int i = 0; i < pairs; i++) {
+            successors[counts[pairEnv[i]]++] = pairRow[i];
+        }
+        successorCount = next;
+    }
+
+    /**
+     * writes the compiled table in the format read by CompiledController.load
+     * @param file
+     * @throws IOException
+     */
+    public void write(String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(CompiledController.MAGIC);
+            out.writeInt(CompiledController.VERSION);
+            out.writeInt(maxCars);
+            out.writeInt(sysCount);
+            out.write(sysInfo, 0, sysCount * 4);
+            out.writeInt(rowCount);
+            out.writeInt(0);
+            for (int row = 0; row < rowCount; row++) {
+                long key = rowKeys[row];
+                out.writeInt(sysOf.get(key & ~envMask) * envInputs + envIndexOf(key));
+            }
+            for (int i = 0; i < rowCount * envInputs + 1; i++) {
+                out.writeInt(offsets[i]);
+            }
+            for (int i = 0; i < successorCount; i++) {
+                out.writeInt(successors[i]);
+            }
+        }
+    }
+
+    /**
+     * gets the row of a state, adding it to the rows still to be expanded if it is new
+     * @param key
+     * @return
+     */
+    private int rowFor(long key) {
+        Integer row = rowOf.get(key);
+        if (row != null) {
+            return row;
+        }
+        long sysKey = key & ~envMask;
+        if (!sysOf.containsKey(sysKey)) {
+            if (sysInfo.length < (sysCount + 1) * 4) {
+                sysInfo = Arrays.copyOf(sysInfo, sysInfo.length * 2);
+            }
+            sysInfo[sysCount * 4] = (byte) Color.valueOf(verticalLights.name(key)).ordinal();
+            sysInfo[sysCount * 4 + 1] = (byte) Color.valueOf(horizontalLights.name(key)).ordinal();
+            sysInfo[sysCount * 4 + 2] = Byte.parseByte(verticalBlinks.name(key));
+            sysInfo[sysCount * 4 + 3] = Byte.parseByte(horizontalBlinks.name(key));
+            sysOf.put(sysKey, sysCount++);
+        }
+        if (rowCount == rowKeys.length) {
+            rowKeys = Arrays.copyOf(rowKeys, rowCount * 2);
+        }
+        rowKeys[rowCount] = key;
+        rowOf.put(key, rowCount);
+        return rowCount++;
+    }
+
+    private int envIndexOf(long key) {
+        return CompiledController.envIndex(maxCars,
+                Integer.parseInt(verticalQueue.name(key)), Integer.parseInt(horizontalQueue.name(key)),
+                Boolean.parseBoolean(verticalCrossing.name(key)), Boolean.parseBoolean(horizontalCrossing.name(key)));
+    }
+
+    /**
+     * checks that every variable of the state has a value inside its domain
+     * (don't-care bits may encode values past the last one)
+     */
+    private boolean isValid(long key) {
+        for (PackedVar field : fields) {
+            if (field.index(key) >= field.size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long keyOf(BDD cube) {
+        BDD.AllSatIterator it = cube.allsat();
+        byte[] profile = it.next();
+        it.free();
+        return keyOf(profile, 0);
+    }
+
+    /**
+     * packs an assignment of the unprimed variables into a long, one bit per variable.
+     * don't-care variables take their values from the bits of combination.
+     */
+    private long keyOf(byte[] profile, long combination) {
+        long key = 0;
+        int dontCare = 0;
+        for (int i = 0; i < unprimeVars.length; i++) {
+            byte bit = profile[unprimeVars[i]];
+            if (bit < 0) {
+                bit = (byte) ((combination >> dontCare++) & 1);
+            }
+            if (bit == 1) {
+                key |= 1L << i;
+            }
+        }
+        return key;
+    }
+
+    private BDD cubeOf(long key) {
+        BDD cube = factory.universe();
+        for (int i = 0; i < unprimeVars.length; i++) {
+            if ((key & (1L << i)) != 0) {
+                cube.andWith(factory.ithVar(unprimeVars[i]));
+            } else {
+                cube.andWith(factory.nithVar(unprimeVars[i]));
+            }
+        }
+        return cube;
+    }
+
+    private BDD boundOf(String var) {
+        BDD bound = Env.FALSE();
+        for (int value = 0; value <= maxCars; value++) {
+            bound.orWith(Env.getBDDValue(var, value).id());
+        }
+        return bound;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getSysCount() {
+        return sysCount;
+    }
+
+    public int getSuccessorCount() {
+        return successorCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : "out/";
+        String file = args.length > 1 ? args[1] : path + "/controller.table";
+        int maxCars = args.length > 2 ? Integer.parseInt(args[2]) : SpectraController.getMaxCarsFromSpectraFile(path);
+        long start = System.nanoTime();
+        ControllerCompiler compiler = new ControllerCompiler(path, maxCars);
+        compiler.compile();
+        compiler.write(file);
+        System.out.printf("compiled %d states (%d system states, %d transitions) into %s in %.1f sec%n",
+                compiler.getRowCount(), compiler.getSysCount(), compiler.getSuccessorCount(), file,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
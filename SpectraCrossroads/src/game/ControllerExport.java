@@ -0,0 +1,619 @@
+package game;
+
+import net.sf.javabdd.BDD;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicController;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicControllerReaderWriter;
+import tau.smlab.syntech.jtlv.BDDPackage;
+import tau.smlab.syntech.jtlv.Env;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * a read-only copy of the symbolic controller in a folder like out/, independent of the global BDD state of JTLV.
+ * the transition relation is copied node by node into plain arrays (variable, low child, high child),
+ * and the variables of the spec into the bit positions of a packed state, one bit per unprimed variable
+ * in the order of StateDecoder.key.
+ * the successors of a state are found by following the nodes of the current state and the environment input
+ * and branching on the bits of the next system state, so a step needs no BDD operations.
+ * nothing changes after the export, so an export is shared by the controllers of all the intersections
+ * and they can be stepped on any number of threads, see ExportedController.
+ *
+ * an export can be written to a snapshot file and loaded back without the spec, JTLV or java serialization,
+ * which takes milliseconds instead of reading the BDDs and the domains of the folder.
+ *
+ * usage: ControllerExport [controller folder] [snapshot file]
+ */
+public class ControllerExport {
+    static final int MAGIC = 0x53435358; // "SCSX"
+    static final int VERSION = 1;
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+    /**
+     * the largest CarsCount bound a snapshot is loaded for, so a damaged maxCars cannot size the environment table.
+     */
+    static final int MAX_CARS = 1023;
+    private static final Map<String, ControllerExport> EXPORTED = new HashMap<>();
+
+    private int maxCars;
+    private int envInputs;
+    private int[] nodeVar;
+    private int[] nodeLow;
+    private int[] nodeHigh;
+    private int root;
+    /**
+     * for every BDD variable the bit of its unprimed variable in a packed state, -1 if the controller does not use it.
+     */
+    private int[] varBit;
+    /**
+     * for every BDD variable true if it belongs to the next state.
+     */
+    private boolean[] varPrimed;
+    private long stateMask;
+    private long envMask;
+    private long[] envValues;
+    private long initialState;
+    private PackedVar[] fields;
+    private PackedVar verticalLights;
+    private PackedVar horizontalLights;
+    private PackedVar verticalQueue;
+    private PackedVar horizontalQueue;
+    private PackedVar verticalBlinks;
+    private PackedVar horizontalBlinks;
+    private PackedVar verticalCrossing;
+    private PackedVar horizontalCrossing;
+    private Color[] verticalLightValues;
+    private Color[] horizontalLightValues;
+    private int[] verticalQueueValues;
+    private int[] horizontalQueueValues;
+    private int[] verticalBlinksValues;
+    private int[] horizontalBlinksValues;
+    private boolean[] verticalCrossingValues;
+    private boolean[] horizontalCrossingValues;
+
+    ControllerExport() {
+    }
+
+    /**
+     * exports the controller of a folder, or returns it if it was already exported.
+     * reading the controller uses the global BDD state, so only one folder is exported at a time.
+     * @param path the folder of the synthesized controller
+     * @return
+     * @throws IOException
+     */
+    public static synchronized ControllerExport of(String path) throws IOException {
+        ControllerExport export = EXPORTED.get(path);
+        if (export == null) {
+            export = export(path);
+            EXPORTED.put(path, export);
+        }
+        return export;
+    }
+
+    private static ControllerExport export(String path) throws IOException {
+        ControllerExport export = new ControllerExport();
+        int maxCars = SpectraController.getMaxCarsFromSpectraFile(path);
+        export.maxCars = maxCars > 0 ? maxCars : 5;
+        export.envInputs = CompiledController.envInputs(export.maxCars);
+        BDDPackage.setCurrPackage(BDDPackage.JTLV);
+        SymbolicController ctrl = SymbolicControllerReaderWriter.readSymbolicController(path);
+        int[] unprimeVars = Env.globalUnprimeVars().toArray();
+        Arrays.sort(unprimeVars);
+        if (unprimeVars.length > 63) {
+            throw new IllegalArgumentException("the controller has " + unprimeVars.length
+                    + " state bits, at most 63 are supported");
+        }
+        int varNum = ctrl.trans().getFactory().varNum();
+        export.varBit = new int[varNum];
+        Arrays.fill(export.varBit, -1);
+        export.varPrimed = new boolean[varNum];
+        export.stateMask = unprimeVars.length == 63 ? Long.MAX_VALUE : (1L << unprimeVars.length) - 1;
+
+        Set<String> sysNames = new TreeSet<>(SymbolicControllerReaderWriter.readSysVarNames(path));
+        Set<String> envNames = new TreeSet<>(SymbolicControllerReaderWriter.readEnvVarNames(path));
+        Set<String> names = new TreeSet<>(sysNames);
+        names.addAll(envNames);
+        export.fields = new PackedVar[names.size()];
+        int i = 0;
+        for (String name : names) {
+            PackedVar field = PackedVar.of(name, unprimeVars);
+            int[] vars = Env.getVar(name).getDomain().vars();
+            int[] primedVars = Env.getVar(name).prime().getDomain().vars();
+            for (int bit = 0; bit < vars.length; bit++) {
+                export.varBit[vars[bit]] = field.getPositions()[bit];
+                export.varBit[primedVars[bit]] = field.getPositions()[bit];
+                export.varPrimed[primedVars[bit]] = true;
+            }
+            export.fields[i++] = field;
+            if (envNames.contains(name)) {
+                export.envMask |= field.getMask();
+            }
+        }
+        export.prepare();
+
+        BDD initial = ctrl.initial().satOne(Env.globalUnprimeVars());
+        export.initialState = export.stateOf(initial);
+        initial.free();
+        export.copyNodes(ctrl.trans());
+        return export;
+    }
+
+    /**
+     * loads a snapshot written by write.
+     * the file is mapped into memory and its arrays are copied out in bulk.
+     * every count is checked against the bytes left in the file before its array is allocated,
+     * and every bit position against the number of state bits,
+     * so a damaged file fails with an IOException instead of running out of memory or out of an array.
+     * @param file
+     * @return
+     * @throws IOException if the file is not a controller snapshot of a supported version or is corrupt
+     */
+    public static ControllerExport load(String file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a controller snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported controller snapshot version " + version + " in " + file);
+            }
+            ControllerExport export = new ControllerExport();
+            export.maxCars = in.getInt();
+            if (export.maxCars < 0 || export.maxCars > MAX_CARS) {
+                throw corrupt(file, "maxCars " + export.maxCars + " is not in 0.." + MAX_CARS);
+            }
+            export.envInputs = CompiledController.envInputs(export.maxCars);
+            int stateBits = in.getInt();
+            if (stateBits < 0 || stateBits > 63) {
+                throw corrupt(file, stateBits + " state bits do not fit in a long");
+            }
+            export.stateMask = stateBits == 63 ? Long.MAX_VALUE : (1L << stateBits) - 1;
+            export.envMask = in.getLong();
+            export.initialState = in.getLong();
+            // a variable takes at least a name, a position count and a value count
+            export.fields = new PackedVar[readCount(in, 12, file, "variables")];
+            for (int i = 0; i < export.fields.length; i++) {
+                String name = readString(in, file);
+                int[] positions = readInts(in, readCount(in, 4, file, "bits of " + name));
+                long mask = 0;
+                for (int position : positions) {
+                    if (position < 0 || position >= stateBits || (mask & (1L << position)) != 0) {
+                        throw corrupt(file, "variable " + name + " has bit " + position
+                                + " of a " + stateBits + " bit state");
+                    }
+                    mask |= 1L << position;
+                }
+                // a value takes at least its length and one byte
+                String[] values = new String[readCount(in, 5, file, "values of " + name)];
+                long patterns = 1L << positions.length;
+                if (values.length > patterns || positions.length > 1 && values.length <= patterns / 2) {
+                    throw corrupt(file, "variable " + name + " has " + values.length
+                            + " values for " + positions.length + " bits");
+                }
+                for (int value = 0; value < values.length; value++) {
+                    values[value] = readString(in, file);
+                }
+                export.fields[i] = new PackedVar(name, positions, values);
+            }
+            // a BDD variable takes its bit and its primed flag
+            export.varBit = readInts(in, readCount(in, 5, file, "BDD variables"));
+            for (int var = 0; var < export.varBit.length; var++) {
+                if (export.varBit[var] < -1 || export.varBit[var] >= stateBits) {
+                    throw corrupt(file, "BDD variable " + var + " has bit " + export.varBit[var]
+                            + " of a " + stateBits + " bit state");
+                }
+            }
+            export.varPrimed = new boolean[export.varBit.length];
+            for (int var = 0; var < export.varPrimed.length; var++) {
+                export.varPrimed[var] = in.get() != 0;
+            }
+            int nodes = in.getInt();
+            export.root = in.getInt();
+            // a node takes its variable and its two children
+            if (nodes < 0 || (long) nodes * 12 > in.remaining()) {
+                throw corrupt(file, "node count " + nodes + " with " + in.remaining() + " bytes left");
+            }
+            export.nodeVar = readInts(in, nodes);
+            export.nodeLow = readInts(in, nodes);
+            export.nodeHigh = readInts(in, nodes);
+            export.checkNodes(file);
+            try {
+                export.prepare();
+            } catch (IllegalArgumentException e) {
+                throw corrupt(file, e.getMessage());
+            }
+            return export;
+        } catch (BufferUnderflowException e) {
+            throw corrupt(file, "the file is truncated");
+        }
+    }
+
+    private static IOException corrupt(String file, String reason) {
+        return new IOException("corrupt snapshot " + file + ": " + reason);
+    }
+
+    /**
+     * reads the number of elements of an array, checked against the bytes left in the file.
+     * @param in
+     * @param bytesEach the least number of bytes an element takes in the file
+     * @param file
+     * @param what the elements, for the message
+     * @return
+     * @throws IOException if the count is negative or the elements cannot fit in the rest of the file
+     */
+    private static int readCount(ByteBuffer in, int bytesEach, String file, String what) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || (long) count * bytesEach > in.remaining()) {
+            throw corrupt(file, count + " " + what + " with " + in.remaining() + " bytes left");
+        }
+        return count;
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * 4);
+        return values;
+    }
+
+    private static String readString(ByteBuffer in, String file) throws IOException {
+        byte[] bytes = new byte[readCount(in, 1, file, "bytes of a name")];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * checks that every node of a loaded snapshot points to variables and nodes that exist,
+     * children before their parents, so a damaged file cannot send a step out of the arrays or into a loop.
+     * @param file
+     * @throws IOException
+     */
+    private void checkNodes(String file) throws IOException {
+        for (int node = TRUE + 1; node < nodeVar.length; node++) {
+            if (nodeVar[node] < 0 || nodeVar[node] >= varBit.length || varBit[nodeVar[node]] < 0
+                    || nodeLow[node] < 0 || nodeLow[node] >= node || nodeHigh[node] < 0 || nodeHigh[node] >= node) {
+                throw corrupt(file, "node " + node + " is damaged");
+            }
+        }
+        if (root < 0 || root >= nodeVar.length) {
+            throw corrupt(file, "the root is damaged");
+        }
+    }
+
+    /**
+     * writes the export to a snapshot file for load:
+     * a header (magic, version, maxCars, the number of state bits, the environment bits and the initial state),
+     * the variables of the spec (name, bit positions and value names), the bit and the primed flag of every
+     * BDD variable, and the nodes of the transition relation. numbers are big-endian, strings UTF-8.
+     * @param file
+     * @throws IOException
+     */
+    public void write(String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(maxCars);
+            out.writeInt(Long.bitCount(stateMask));
+            out.writeLong(envMask);
+            out.writeLong(initialState);
+            out.writeInt(fields.length);
+            for (PackedVar field : fields) {
+                writeString(out, field.getName());
+                out.writeInt(field.getPositions().length);
+                writeInts(out, field.getPositions());
+                out.writeInt(field.size());
+                for (String value : field.getValues()) {
+                    writeString(out, value);
+                }
+            }
+            out.writeInt(varBit.length);
+            writeInts(out, varBit);
+            for (boolean primed : varPrimed) {
+                out.writeByte(primed ? 1 : 0);
+            }
+            out.writeInt(nodeVar.length);
+            out.writeInt(root);
+            writeInts(out, nodeVar);
+            writeInts(out, nodeLow);
+            writeInts(out, nodeHigh);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * looks up the variables of SystemState among the fields
+     * and builds the tables that are derived from them rather than exported.
+     */
+    private void prepare() {
+        Map<String, PackedVar> fieldOf = new HashMap<>();
+        for (PackedVar field : fields) {
+            fieldOf.put(field.getName(), field);
+        }
+        verticalLights = field(fieldOf, "verticalLights");
+        horizontalLights = field(fieldOf, "horizontalLights");
+        verticalQueue = field(fieldOf, "carsWaitingInVerticalRoad");
+        horizontalQueue = field(fieldOf, "carsWaitingInHorizontalRoad");
+        verticalBlinks = field(fieldOf, "verticalBlinks");
+        horizontalBlinks = field(fieldOf, "horizontalBlinks");
+        verticalCrossing = field(fieldOf, "verticalCarCrossing");
+        horizontalCrossing = field(fieldOf, "horizontalCarCrossing");
+        envValues = envValues();
+        decodeValues();
+    }
+
+    private static PackedVar field(Map<String, PackedVar> fieldOf, String name) {
+        PackedVar field = fieldOf.get(name);
+        if (field == null) {
+            throw new IllegalArgumentException("the controller has no variable " + name);
+        }
+        return field;
+    }
+
+    /**
+     * packs the environment values of every environment input, indexed by CompiledController.envIndex.
+     * @return
+     */
+    private long[] envValues() {
+        long[] values = new long[envInputs];
+        for (int vertical = 0; vertical <= maxCars; vertical++) {
+            for (int horizontal = 0; horizontal <= maxCars; horizontal++) {
+                for (int v = 0; v < 2; v++) {
+                    for (int h = 0; h < 2; h++) {
+                        values[CompiledController.envIndex(maxCars, vertical, horizontal, v == 1, h == 1)]
+                                = verticalQueue.pack(String.valueOf(vertical))
+                                | horizontalQueue.pack(String.valueOf(horizontal))
+                                | verticalCrossing.pack(String.valueOf(v == 1))
+                                | horizontalCrossing.pack(String.valueOf(h == 1));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * parses the values of the variables of SystemState once, so decoding a state only picks from arrays.
+     */
+    private void decodeValues() {
+        verticalLightValues = verticalLights.colorValues();
+        horizontalLightValues = horizontalLights.colorValues();
+        verticalQueueValues = verticalQueue.intValues();
+        horizontalQueueValues = horizontalQueue.intValues();
+        verticalBlinksValues = verticalBlinks.intValues();
+        horizontalBlinksValues = horizontalBlinks.intValues();
+        verticalCrossingValues = verticalCrossing.booleanValues();
+        horizontalCrossingValues = horizontalCrossing.booleanValues();
+    }
+
+    /**
+     * packs a BDD holding a single state.
+     * @param state
+     * @return
+     */
+    private long stateOf(BDD state) {
+        BDD.AllSatIterator it = state.allsat();
+        byte[] profile = it.next();
+        it.free();
+        long packed = 0;
+        for (int var = 0; var < profile.length; var++) {
+            if (profile[var] == 1 && !varPrimed[var] && varBit[var] >= 0) {
+                packed |= 1L << varBit[var];
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * copies the nodes of the transition relation into the arrays, children before their parents.
+     * @param trans
+     */
+    private void copyNodes(BDD trans) {
+        nodeVar = new int[1024];
+        nodeLow = new int[1024];
+        nodeHigh = new int[1024];
+        Map<BDD, Integer> indexOf = new HashMap<>();
+        int[] count = {2};
+        root = copyNode(trans.id(), indexOf, count);
+        nodeVar = Arrays.copyOf(nodeVar, count[0]);
+        nodeLow = Arrays.copyOf(nodeLow, count[0]);
+        nodeHigh = Arrays.copyOf(nodeHigh, count[0]);
+        for (BDD node : indexOf.keySet()) {
+            node.free();
+        }
+    }
+
+    /**
+     * @param node a BDD owned by this call, freed or kept in indexOf
+     * @return the index of the node in the arrays
+     */
+    private int copyNode(BDD node, Map<BDD, Integer> indexOf, int[] count) {
+        if (node.isZero()) {
+            node.free();
+            return FALSE;
+        }
+        if (node.isOne()) {
+            node.free();
+            return TRUE;
+        }
+        Integer copied = indexOf.get(node);
+        if (copied != null) {
+            node.free();
+            return copied;
+        }
+        int low = copyNode(node.low(), indexOf, count);
+        int high = copyNode(node.high(), indexOf, count);
+        int index = count[0]++;
+        if (index == nodeVar.length) {
+            nodeVar = Arrays.copyOf(nodeVar, index * 2);
+            nodeLow = Arrays.copyOf(nodeLow, index * 2);
+            nodeHigh = Arrays.copyOf(nodeHigh, index * 2);
+        }
+        nodeVar[index] = node.var();
+        if (varBit[nodeVar[index]] < 0) {
+            throw new IllegalArgumentException("the controller uses variable " + nodeVar[index]
+                    + " which is not a variable of the spec");
+        }
+        nodeLow[index] = low;
+        nodeHigh[index] = high;
+        indexOf.put(node, index);
+        return index;
+    }
+
+    /**
+     * finds all the states the controller allows after a state for an environment input.
+     * @param state the packed current state
+     * @param envIndex the environment input, see CompiledController.envIndex
+     * @param successors receives the packed next states, cleared first
+     */
+    void successors(long state, int envIndex, Successors successors) {
+        successors.count = 0;
+        collect(root, state, envValues[envIndex], envMask, successors);
+    }
+
+    /**
+     * follows the nodes of the current state and of the values already picked for the next state,
+     * and branches on the bits of the next state that are not picked yet.
+     * @param node
+     * @param state the current state
+     * @param next the bits picked for the next state so far
+     * @param picked the bits of the next state that are picked
+     * @param successors
+     */
+    private void collect(int node, long state, long next, long picked, Successors successors) {
+        while (node > TRUE) {
+            int var = nodeVar[node];
+            long bit = 1L << varBit[var];
+            if (!varPrimed[var]) {
+                node = (state & bit) != 0 ? nodeHigh[node] : nodeLow[node];
+            } else if ((picked & bit) != 0) {
+                node = (next & bit) != 0 ? nodeHigh[node] : nodeLow[node];
+            } else {
+                collect(nodeLow[node], state, next, picked | bit, successors);
+                node = nodeHigh[node];
+                next |= bit;
+                picked |= bit;
+            }
+        }
+        if (node == TRUE) {
+            long free = stateMask & ~picked;
+            long values = 0;
+            do {
+                long candidate = next | values;
+                if (isValid(candidate)) {
+                    successors.add(candidate);
+                }
+                values = (values - free) & free;
+            } while (values != 0);
+        }
+    }
+
+    /**
+     * checks that every variable of a state has a value inside its domain
+     * (bits the controller does not care about may encode values past the last one)
+     */
+    private boolean isValid(long state) {
+        for (PackedVar field : fields) {
+            if (field.index(state) >= field.size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param state a packed state
+     * @return the system state of the packed state
+     */
+    SystemState decode(long state) {
+        return new SystemState(
+                verticalLightValues[verticalLights.index(state)],
+                horizontalLightValues[horizontalLights.index(state)],
+                verticalQueueValues[verticalQueue.index(state)],
+                horizontalQueueValues[horizontalQueue.index(state)],
+                verticalBlinksValues[verticalBlinks.index(state)],
+                horizontalBlinksValues[horizontalBlinks.index(state)],
+                verticalCrossingValues[verticalCrossing.index(state)],
+                horizontalCrossingValues[horizontalCrossing.index(state)]);
+    }
+
+    /**
+     * @return the maximum number of cars in a road in the spec
+     */
+    public int getMaxCars() {
+        return maxCars;
+    }
+
+    int getEnvInputs() {
+        return envInputs;
+    }
+
+    /**
+     * @return the packed state the controller starts in, the state SpectraController starts in
+     */
+    long getInitialState() {
+        return initialState;
+    }
+
+    /**
+     * @return the number of nodes of the transition relation, including the two terminals
+     */
+    public int getNodeCount() {
+        return nodeVar.length;
+    }
+
+    /**
+     * the successors found by a step, reused from step to step by the controller that owns it.
+     */
+    static class Successors {
+        long[] states = new long[8];
+        int count = 0;
+
+        void add(long state) {
+            if (count == states.length) {
+                states = Arrays.copyOf(states, count * 2);
+            }
+            states[count++] = state;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : "out/";
+        String file = args.length > 1 ? args[1] : path + "/controller.snapshot";
+        long start = System.nanoTime();
+        ControllerExport export = export(path);
+        export.write(file);
+        System.out.printf("exported %d nodes, maxCars %d, into %s in %.1f sec%n",
+                export.getNodeCount(), export.getMaxCars(), file, (System.nanoTime() - start) / 1e9);
+        start = System.nanoTime();
+        load(file);
+        System.out.printf("loaded %s in %.1f ms%n", file, (System.nanoTime() - start) / 1e6);
+    }
+}
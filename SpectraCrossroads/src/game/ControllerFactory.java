@@ -0,0 +1,18 @@
+package game;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * creates the traffic controller of a simulation.
+ *
+ */
+public interface ControllerFactory {
+
+    /**
+     * @param random the source of the choices of the new controller
+     * @return a controller in its initial state
+     * @throws IOException if the controller cannot be loaded
+     */
+    TrafficController create(SplittableRandom random) throws IOException;
+}
@@ -1,17 +1,10 @@
 package game;
-import net.sf.javabdd.BDD;
-import tau.smlab.syntech.games.controller.symbolic.SymbolicController;
-import tau.smlab.syntech.games.controller.symbolic.SymbolicControllerReaderWriter;
-import tau.smlab.syntech.jtlv.BDDPackage;
-import tau.smlab.syntech.jtlv.Env;
 import javax.swing.*;
 import java.awt.*;
-import java.io.*;
+import java.io.IOException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * holds the UI components and the main application
@@ -19,208 +12,88 @@ import java.util.zip.ZipInputStream;
  */
 @SuppressWarnings("serial")
 public class Crossroads extends JPanel {
-    private GameBoard gameBoard;
-    private BDD currentState;
-    private SymbolicController ctrl;
-    private boolean initialState = true;
-    private int lineMax = 5;
-    private int controllerInterval = 10;
+    private static final int FRAME_MILLIS = 16;
+    private static final Dimension MAX_VIEW_SIZE = new Dimension(800, 600);
+    private static final int STOP_SECONDS = 5;
+    private Simulation simulation;
+    private BoardFrame paintedFrame;
+    private volatile boolean running = true;
+    private final CountDownLatch stopped = new CountDownLatch(1);
     private static JSlider verticalSlider;
     private static JSlider horizontalSlider;
     private static JSlider controllerSlider;
 
     /**
      * constructor.
-     * sets up the game board
-     * @throws IOException
+     * sets up the simulation
+     * @param simulation
      */
-    private Crossroads() throws IOException {
-        gameBoard = new GameBoard();
+    private Crossroads(Simulation simulation) {
+        this.simulation = simulation;
     }
     /**
      * initialize an infinite loop that iterates every 30 ms:
      * gets user input from sliders
-     * sets environment state based on the cars in the game board
-     * controls the traffic lights by the spectra synthesized controller in the specified interval
-     * repaints the updated game board
+     * advances the simulation by one tick
+     * publishes the updated game board for drawing.
+     * the UI repaints the latest published board on its own timer,
+     * so a slow repaint does not slow down the simulation.
+     * the loop ends when stop is called.
      * @throws Exception
      */
     private void run() throws Exception {
-        loadController();
-        long i = 0;
-        while (true) {
-            getUserInputFromSliders();
-            if (i % controllerInterval == 0) {
-                updateSpectraState();
+        try {
+            simulation.publishFrame();
+            new javax.swing.Timer(FRAME_MILLIS, e -> repaintIfChanged()).start();
+            while (running) {
+                getUserInputFromSliders();
+                simulation.step();
+                simulation.publishFrame();
+                Thread.sleep(Simulation.TICK_MILLIS);
             }
-            gameBoard.updateGameBoard();
-            i++;
-            repaint();
-            Thread.sleep(30);
+        } finally {
+            stopped.countDown();
         }
     }
-    /**
-     * allows the user to interact with the game by setting 3 parameters in the sliders:
-     * a. the frequency of the incoming cars in the vertical road
-     * b. the frequency of the incoming cars in the horizontal road
-     * c. the time interval in which spectra updates the traffic lights
-     */
-    private void getUserInputFromSliders() {
-        if (!verticalSlider.getValueIsAdjusting() & gameBoard.verticalMax != verticalSlider.getValue()) {
-            gameBoard.verticalMax = verticalSlider.getValue();
-            gameBoard.nextNorth = gameBoard.getRandomInt(gameBoard.verticalMin, gameBoard.verticalMax);
-            gameBoard.nextSouth = gameBoard.getRandomInt(gameBoard.verticalMin, gameBoard.verticalMax);
-            gameBoard.northTurn = 0;
-            gameBoard.southTurn = 0;
-
-        }
-        if (!horizontalSlider.getValueIsAdjusting() & gameBoard.horizontalMax != horizontalSlider.getValue()) {
-            gameBoard.horizontalMax = horizontalSlider.getValue();
-            gameBoard.nextEast = gameBoard.getRandomInt(gameBoard.horizontalMin, gameBoard.horizontalMax);
-            gameBoard.nextWest = gameBoard.getRandomInt(gameBoard.horizontalMin, gameBoard.horizontalMax);
-            gameBoard.eastTurn = 0;
-            gameBoard.westTurn = 0;
 
-        }
-        if (!controllerSlider.getValueIsAdjusting() & controllerInterval != controllerSlider.getValue()) {
-            controllerInterval = controllerSlider.getValue();
-        }
-    }
     /**
-     * initializes the spectra controller from the synthesized spectra file
-     */
-    private void loadController() {
-        BDDPackage.setCurrPackage(BDDPackage.JTLV);
-        try {
-            ctrl = SymbolicControllerReaderWriter.readSymbolicController("out/");
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        currentState = ctrl.initial().id();
-        initialState = true;
-    }
-    /**
-     * where the magic happens.
-     * based on the environment state (cars on the road) 
-     * determines the possible next traffic light actions
-     * based on the spectra spec.
-     * chooses one of the possible actions randomly.
-     * 
+     * stops the loop of run and waits for the tick it is in to finish,
+     * so the simulation is not stepped while it is closed.
      * @throws InterruptedException
      */
-    private void updateSpectraState() throws InterruptedException {
-        if (initialState) {
-            BDD one = currentState.satOne(Env.globalUnprimeVars());
-            currentState.free();
-            currentState = one;
-            initialState = false;
-        } else {
-            BDD succs = ctrl.succ(currentState);
-            BDD succsWithVehicles = setVehiclesState(succs);
-            succs.free();
-            java.util.List<BDD> systemChoices = new ArrayList<>();
-            BDD.BDDIterator it = new BDD.BDDIterator(succsWithVehicles, Env.globalUnprimeVars());
-            while (it.hasNext()) {
-                systemChoices.add(it.next());
-            }
-            int pick = (int) Math.floor(Math.random() * systemChoices.size());
-            currentState = systemChoices.get(pick).id();
-            Env.free(systemChoices);
-            succsWithVehicles.free();
+    private void stop() throws InterruptedException {
+        running = false;
+        if (!stopped.await(STOP_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println("the simulation did not stop within " + STOP_SECONDS + " seconds");
         }
-        String state = currentState.toStringWithDomains(Env.stringer);
-        String[] stateVals = state.replace("<", "").replace(">", "").replace(" ", "").split(",");
-        SystemState systemState = getSystemState(stateVals);
-        controlLightsWithSpectra(systemState);
     }
 
     /**
-     * prints all of the variable values in a nice string
-     * (needed because the default spectra print function cant handle that many vars) 
-     * and gets the actual values of the system vars to control the traffic lights.
-     * @param stateVals the values of the current state
-     * @return an object of the current SystemState
+     * repaints the game board if a new frame was published since the last paint.
+     * runs on the event dispatch thread.
      */
-    private SystemState getSystemState(String[] stateVals) {
-        Color verticalLight = null;
-        Color horizontalLight = null;
-        int verticalQueue = 0;
-        int horizontalQueue = 0;
-        int verticalBlinks = 0;
-        int horizontalBlinks = 0;
-        boolean verticalCarCrossing = false;
-        boolean horizontalCarCrossing = false;
-        for (String s : stateVals) {
-            String[] val = s.split(":");
-            if ("verticalLights".equals(val[0])) {
-                verticalLight = Color.valueOf(val[1]);
-                continue;
-            }
-            if ("horizontalLights".equals(val[0])) {
-                horizontalLight = Color.valueOf(val[1]);
-                continue;
-            }
-            if ("carsWaitingInVerticalRoad".equals(val[0])) {
-                verticalQueue = Integer.valueOf(val[1]);
-                continue;
-            }
-            if ("carsWaitingInHorizontalRoad".equals(val[0])) {
-                horizontalQueue = Integer.valueOf(val[1]);
-                continue;
-            }
-            if ("verticalBlinks".equals(val[0])) {
-                verticalBlinks = Integer.valueOf(val[1]);
-                continue;
-            }
-            if ("horizontalBlinks".equals(val[0])) {
-                horizontalBlinks = Integer.valueOf(val[1]);
-                continue;
-            }
-            if ("verticalCarCrossing".equals(val[0])) {
-                verticalCarCrossing = Boolean.valueOf(val[1]);
-                continue;
-            }
-            if ("horizontalCarCrossing".equals(val[0])) {
-                horizontalCarCrossing = Boolean.valueOf(val[1]);
-            }
+    private void repaintIfChanged() {
+        if (simulation.getFrame() != paintedFrame) {
+            repaint();
         }
-        System.out.println("vertical: " + verticalLight + " horizontal: " + horizontalLight +
-                " vertical queue: " + verticalQueue + " horizontal queue: " + horizontalQueue +
-                " vertical blinks: " + verticalBlinks + " horizontal blinks: " + horizontalBlinks +
-                " vertical crossing: " + verticalCarCrossing + " horizontal crossing: " + horizontalCarCrossing);
-        return new SystemState(verticalLight, horizontalLight);
-    }
-
-    /**
-     * sets the environment variables in the synthesized spec according to the cars on the board
-     * calculates number of waiting cars in each road as the sum of waiting cars on both ways.
-     * @param succs the next allowed states
-     * @return the subset of states filtered to the newly assigned environment vars
-     */
-    private BDD setVehiclesState(BDD succs) {
-        int waitingNorth = gameBoard.getIntersection().getWaitingList(Direction.SOUTH).size();
-        int waitingSouth = gameBoard.getIntersection().getWaitingList(Direction.NORTH).size();
-        int waitingEast = gameBoard.getIntersection().getWaitingList(Direction.WEST).size();
-        int waitingWest = gameBoard.getIntersection().getWaitingList(Direction.EAST).size();
-        int verticalWaiting = waitingNorth + waitingSouth < lineMax ? waitingNorth + waitingSouth : lineMax;
-        int horizontalWaiting = waitingEast + waitingWest < lineMax ? waitingEast + waitingWest : lineMax;
-        String carMainCrossing = String.valueOf(gameBoard.isVerticalPassing());
-        String carSideCrossing = String.valueOf(gameBoard.isHorizontalPassing());
-        return succs.and(Env.getBDDValue("carsWaitingInVerticalRoad", verticalWaiting))
-                .and(Env.getBDDValue("carsWaitingInHorizontalRoad", horizontalWaiting))
-                .and(Env.getBDDValue("verticalCarCrossing", carMainCrossing))
-                .and(Env.getBDDValue("horizontalCarCrossing", carSideCrossing));
     }
-    
     /**
-     * controls the traffic lights according to the selected system state.
-     * @param systemState
+     * allows the user to interact with the game by setting 3 parameters in the sliders:
+     * a. the frequency of the incoming cars in the vertical road
+     * b. the frequency of the incoming cars in the horizontal road
+     * c. the time interval in which spectra updates the traffic lights
      */
-    private void controlLightsWithSpectra(SystemState systemState) {
-        gameBoard.getIntersection().getEntrance(Direction.NORTH).setLight(systemState.getVerticalLight());
-        gameBoard.getIntersection().getEntrance(Direction.SOUTH).setLight(systemState.getVerticalLight());
-        gameBoard.getIntersection().getEntrance(Direction.EAST).setLight(systemState.getHorizontalLight());
-        gameBoard.getIntersection().getEntrance(Direction.WEST).setLight(systemState.getHorizontalLight());
+    private void getUserInputFromSliders() {
+        GameBoard gameBoard = simulation.getGameBoard();
+        if (!verticalSlider.getValueIsAdjusting() & gameBoard.verticalMax != verticalSlider.getValue()) {
+            gameBoard.setVerticalFrequency(gameBoard.verticalMin, verticalSlider.getValue());
+        }
+        if (!horizontalSlider.getValueIsAdjusting() & gameBoard.horizontalMax != horizontalSlider.getValue()) {
+            gameBoard.setHorizontalFrequency(gameBoard.horizontalMin, horizontalSlider.getValue());
+        }
+        if (!controllerSlider.getValueIsAdjusting() & simulation.getControllerInterval() != controllerSlider.getValue()) {
+            simulation.setControllerInterval(controllerSlider.getValue());
+        }
     }
     /**
      * sets up the UI of the application
@@ -269,75 +142,56 @@ public class Crossroads extends JPanel {
         controlPanel.add(horizontalSlider);
 
         window.add(controlPanel);
-        window.add(crossroadsGame);
+        Dimension boardSize = crossroadsGame.getPreferredSize();
+        if (boardSize.width > MAX_VIEW_SIZE.width || boardSize.height > MAX_VIEW_SIZE.height) {
+            JScrollPane scrollPane = new JScrollPane(crossroadsGame);
+            scrollPane.getViewport().setPreferredSize(new Dimension(Math.min(boardSize.width, MAX_VIEW_SIZE.width),
+                    Math.min(boardSize.height, MAX_VIEW_SIZE.height)));
+            window.add(scrollPane);
+        } else {
+            window.add(crossroadsGame);
+        }
         window.pack();
         window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         window.setLocationRelativeTo(null);
         window.setVisible(true);
         window.setResizable(false);
     }
-    /**
-     * finds the maximum number of cars specified in the spectra file
-     * in type CarsCount = Int(0..<max number>);
-     * using regex. 
-     * @param line: a chunk of the spectra file
-     * @return the max number of cars or -1 if no match was found
-     */
-    private int findMaxLineCount(String line) {
-        int result = -1;
-        line = line.replaceAll("\\s+", "");
-        Pattern p = Pattern.compile("(?<=CarsCount=Int\\([0-9]\\.\\.)[0-9]+(?=\\))");
-        Matcher m = p.matcher(line);
-        if (m.find()) {
-            String foundPattern = m.group();
-            result = Integer.parseInt(foundPattern);
-        }
-        return result;
-    }
-    /**
-     * gets the maximum number of cars allowed in the spectra file
-     * in type CarsCount = Int(0..<max number>);
-     * and overrides the default value of 5.
-     * prevents an overflow of value not expected by the spec.
-     * @throws IOException
-     */
-    private void getMaxCarsFromSpectraFile() throws IOException {
-        String fileToBeExtracted = "SpectraCrossroads/CrossRoads.spectra";
-        String zipPackage = "./out/spec.zip";
-        FileInputStream fileInputStream = new FileInputStream(zipPackage);
-        BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
-        ZipInputStream zin = new ZipInputStream(bufferedInputStream);
-        ZipEntry ze;
-        while ((ze = zin.getNextEntry()) != null) {
-            if (ze.getName().equals(fileToBeExtracted)) {
-                byte[] buffer = new byte[9000];
-                while ((zin.read(buffer)) != -1) {
-                    String spec = new String(buffer);
-                    int newMax = findMaxLineCount(spec);
-                    if (newMax > 0) {
-                        lineMax = newMax;
-                        break;
-                    }
-                }
-                break;
-            }
-        }
-        zin.close();
-    }
-
     @Override
     public Dimension getPreferredSize() {
-        return new Dimension(800, 600);
+        GameBoard gameBoard = simulation.getGameBoard();
+        return new Dimension(gameBoard.getWidth(), gameBoard.getHeight());
     }
 
     @Override
     protected void paintComponent(Graphics g) {
-        gameBoard.draw(g);
+        BoardFrame frame = simulation.getFrame();
+        if (frame != null) {
+            SimulationMetrics metrics = simulation.getMetrics();
+            long start = metrics != null ? System.nanoTime() : 0;
+            simulation.getGameBoard().draw(g, frame);
+            if (metrics != null) {
+                metrics.recordPaint(System.nanoTime() - start);
+            }
+            paintedFrame = frame;
+        }
     }
 
     public static void main(String[] args) throws Exception {
-        Crossroads crossroadsGame = new Crossroads();
-        crossroadsGame.getMaxCarsFromSpectraFile();
+        Simulation simulation = new Simulation(SimulationConfig.fromArgs(args));
+        Crossroads crossroadsGame = new Crossroads(simulation);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                crossroadsGame.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                simulation.close();
+            } catch (IOException e) {
+                System.err.println("telemetry was not written completely: " + e);
+            }
+        }));
         createAndShowGUI(crossroadsGame);
         crossroadsGame.run();
     }
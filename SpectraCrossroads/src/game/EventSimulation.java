@@ -0,0 +1,422 @@
+package game;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * a discrete-event engine for long headless runs on the same board and controllers as Simulation.
+ * instead of moving every car 2 pixels every tick, every road leading to an intersection is a Lane:
+ * the tick a car reaches the stop line is computed when it enters the road,
+ * and the cars standing at the stop line enter the intersection one by one while the light lets them.
+ * a priority queue of events holds the next car arrival on every road end, the next controller step,
+ * and the next tick every lane changes: a car reaches its stop line or the first car of its queue can go.
+ * a lane standing at a red light or behind a full road has no event at all,
+ * it is woken up when its light turns green or a car leaves the road in front of it,
+ * so the cost of a run depends on the number of cars and controller steps, not on the number of ticks.
+ *
+ * the timing follows the cars of the tick engine: cars drive 2 pixels a tick with 40 pixels between them,
+ * and the cars of a standing queue follow each other QUEUE_HEADWAY ticks apart.
+ * a car counts as waiting from the tick it reaches the stop line,
+ * and the road after an intersection takes as many cars as fit between its stop line and the intersection before it
+ * with room for one more car, see GameBoard.hasSpaceAfterIntersection.
+ * the cars standing in a queue are counted at the stop line, not at the place they stand,
+ * so the numbers of a run are close to the numbers of the tick engine but not the same.
+ * the engine keeps no car positions and cannot be drawn.
+ * its telemetry (see TelemetryWriter) has a record for every controller step, not for every tick,
+ * and its metrics (see SimulationMetrics) only time the controller steps.
+ * it does not follow single cars, so it collects no VehicleStatistics.
+ */
+public class EventSimulation implements AutoCloseable {
+    /**
+     * the ticks between two cars of a standing queue entering the intersection:
+     * a car that stood still moves 5 ticks after the car in front of it (see RoadQueue.drive)
+     * and drives the 38 pixels standing cars keep between them in 19 ticks.
+     */
+    static final int QUEUE_HEADWAY = 24;
+    /**
+     * the ticks a moving car needs to drive the 40 pixels to the place of the car in front of it.
+     */
+    static final int FOLLOW_TICKS = 20;
+    /**
+     * the ticks a car needs from the stop line until it left the intersection, see GameBoard.isVehicleInIntersection.
+     */
+    static final int CLEAR_TICKS = 38;
+    private static final int TILE_SIZE = 40;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private TrafficController[] controllers;
+    private int controllerInterval;
+    private Lane[] lanes;
+    private long[] verticalClear;
+    private long[] horizontalClear;
+    private PriorityQueue<Event> events = new PriorityQueue<>();
+    private long sequence = 0;
+    private long tick = 0;
+    private int waiting = 0;
+    private long arrivedVehicles = 0;
+    private long passedVehicles = 0;
+    private RunStatistics statistics = new RunStatistics();
+    private long[] passedByIntersection;
+    private TelemetryWriter telemetry;
+    private SimulationMetrics metrics;
+    private int[] waitingByDirection = new int[DIRECTIONS.length];
+
+    /**
+     * constructor.
+     * sets up the board and loads the controllers as specified in the config
+     * @param config
+     * @throws IOException
+     */
+    public EventSimulation(SimulationConfig config) throws IOException {
+        this(config, Simulation.controllerFactory(config));
+    }
+
+    /**
+     * constructor.
+     * sets up the board as specified in the config, with a controller from the given factory for every intersection.
+     * @param config
+     * @param controllerFactory
+     * @throws IOException
+     */
+    public EventSimulation(SimulationConfig config, ControllerFactory controllerFactory) throws IOException {
+        SplittableRandom random = new SplittableRandom(config.getSeed());
+        SplittableRandom arrivalRandom = random.split();
+        controllerInterval = config.getControllerInterval();
+        buildLanes(config.getGridColumns(), config.getGridRows(), config.getBlockWidth(), config.getBlockHeight());
+        ArrivalFactory arrivalFactory = Simulation.arrivalFactory(config);
+        for (Lane lane : lanes) {
+            if (lane.getPrevious() == null) {
+                boolean horizontal = lane.getDirection() == Direction.EAST || lane.getDirection() == Direction.WEST;
+                ArrivalProcess arrivals = arrivalFactory.create(arrivalRandom, lane.getDirection(),
+                        horizontal ? lane.getIntersection() / config.getGridColumns() : lane.getIntersection() % config.getGridColumns());
+                arrivals.setInterval(horizontal ? config.getHorizontalMin() : config.getVerticalMin(),
+                        horizontal ? config.getHorizontalMax() : config.getVerticalMax());
+                lane.setArrivalProcess(arrivals);
+            }
+        }
+        for (Lane lane : lanes) {
+            if (lane.getArrivalProcess() != null) {
+                scheduleArrival(lane, -1);
+            }
+        }
+        controllers = new TrafficController[lanes.length / DIRECTIONS.length];
+        for (int i = 0; i < controllers.length; i++) {
+            controllers[i] = controllerFactory.create(random.split());
+        }
+        verticalClear = new long[controllers.length];
+        horizontalClear = new long[controllers.length];
+        passedByIntersection = new long[controllers.length];
+        if (config.getTelemetry() != null) {
+            telemetry = new TelemetryWriter(config.getTelemetry(), controllers.length);
+        }
+        if (config.isMetrics()) {
+            metrics = new SimulationMetrics(config.getSeed(), config.getMetricsInterval());
+            for (TrafficController controller : controllers) {
+                if (controller instanceof SpectraController) {
+                    ((SpectraController) controller).setMetrics(metrics);
+                }
+            }
+        }
+        events.add(new Event(0, Event.CONTROL, sequence++, null));
+    }
+
+    /**
+     * creates the lanes of every intersection and connects them along the roads.
+     * the layout is the layout of GameBoard.
+     * @param columns
+     * @param rows
+     * @param blockWidth
+     * @param blockHeight
+     */
+    private void buildLanes(int columns, int rows, int blockWidth, int blockHeight) {
+        int width = columns * blockWidth * TILE_SIZE;
+        int height = rows * blockHeight * TILE_SIZE;
+        lanes = new Lane[columns * rows * DIRECTIONS.length];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int intersection = row * columns + column;
+                int x = (column * blockWidth + blockWidth / 2) * TILE_SIZE;
+                int y = (row * blockHeight + blockHeight / 2) * TILE_SIZE;
+                int horizontalTravel = blockWidth * TILE_SIZE / 2;
+                int verticalTravel = blockHeight * TILE_SIZE / 2;
+                lanes[laneIndex(intersection, Direction.EAST)] = column == 0
+                        ? new Lane(intersection, Direction.EAST, Color.RED, x / 2, Integer.MAX_VALUE)
+                        : new Lane(intersection, Direction.EAST, Color.RED, horizontalTravel, blockWidth - 2);
+                lanes[laneIndex(intersection, Direction.WEST)] = column == columns - 1
+                        ? new Lane(intersection, Direction.WEST, Color.RED, (width - x - TILE_SIZE) / 2, Integer.MAX_VALUE)
+                        : new Lane(intersection, Direction.WEST, Color.RED, horizontalTravel, blockWidth - 2);
+                lanes[laneIndex(intersection, Direction.SOUTH)] = row == 0
+                        ? new Lane(intersection, Direction.SOUTH, Color.GREEN, y / 2, Integer.MAX_VALUE)
+                        : new Lane(intersection, Direction.SOUTH, Color.GREEN, verticalTravel, blockHeight - 2);
+                lanes[laneIndex(intersection, Direction.NORTH)] = row == rows - 1
+                        ? new Lane(intersection, Direction.NORTH, Color.GREEN, (height - y - TILE_SIZE) / 2, Integer.MAX_VALUE)
+                        : new Lane(intersection, Direction.NORTH, Color.GREEN, verticalTravel, blockHeight - 2);
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int intersection = row * columns + column;
+                if (column + 1 < columns) {
+                    lanes[laneIndex(intersection, Direction.EAST)].setNext(lanes[laneIndex(intersection + 1, Direction.EAST)]);
+                    lanes[laneIndex(intersection + 1, Direction.WEST)].setNext(lanes[laneIndex(intersection, Direction.WEST)]);
+                }
+                if (row + 1 < rows) {
+                    lanes[laneIndex(intersection, Direction.SOUTH)].setNext(lanes[laneIndex(intersection + columns, Direction.SOUTH)]);
+                    lanes[laneIndex(intersection + columns, Direction.NORTH)].setNext(lanes[laneIndex(intersection, Direction.NORTH)]);
+                }
+            }
+        }
+    }
+
+    private static int laneIndex(int intersection, Direction direction) {
+        return intersection * DIRECTIONS.length + direction.ordinal();
+    }
+
+    /**
+     * schedules the next car entering the board on a lane.
+     * like the tick engine, a process that names the tick of the last car again sends no more cars.
+     * @param lane
+     * @param last the tick of the last car, -1 before the first one
+     */
+    private void scheduleArrival(Lane lane, long last) {
+        long at = lane.getArrivalProcess().nextArrival(last);
+        if (at > last && at != Long.MAX_VALUE) {
+            events.add(new Event(at, Event.SPAWN, sequence++, lane));
+        }
+    }
+
+    /**
+     * advances the simulation by a number of ticks,
+     * handling only the ticks that have events and recording the ticks between them at once.
+     * @param ticks
+     */
+    public void advance(long ticks) {
+        long end = tick + ticks;
+        while (!events.isEmpty() && events.peek().tick < end) {
+            long next = events.peek().tick;
+            statistics.recordTicks(next - tick, waiting, arrivedVehicles, passedVehicles);
+            tick = next;
+            while (!events.isEmpty() && events.peek().tick == tick) {
+                handle(events.poll());
+            }
+            statistics.recordTicks(1, waiting, arrivedVehicles, passedVehicles);
+            tick++;
+        }
+        statistics.recordTicks(end - tick, waiting, arrivedVehicles, passedVehicles);
+        tick = end;
+    }
+
+    private void handle(Event event) {
+        switch (event.kind) {
+            case Event.CONTROL:
+                updateLights();
+                events.add(new Event(tick + controllerInterval, Event.CONTROL, sequence++, null));
+                break;
+            case Event.SPAWN:
+                if (event.lane.getArrivalProcess().bringsCar()) {
+                    arrivedVehicles++;
+                    schedule(event.lane, event.lane.enter(tick));
+                }
+                scheduleArrival(event.lane, tick);
+                break;
+            case Event.LANE:
+                if (event.lane.getScheduled() == tick) {
+                    updateLane(event.lane);
+                }
+                break;
+        }
+    }
+
+    /**
+     * steps the controller of every intersection, like Simulation.updateLights,
+     * and wakes up the lanes whose light let them go.
+     */
+    private void updateLights() {
+        for (int i = 0; i < controllers.length; i++) {
+            Lane south = lanes[laneIndex(i, Direction.SOUTH)];
+            Lane north = lanes[laneIndex(i, Direction.NORTH)];
+            Lane east = lanes[laneIndex(i, Direction.EAST)];
+            Lane west = lanes[laneIndex(i, Direction.WEST)];
+            boolean verticalCrossing = tick < verticalClear[i];
+            boolean horizontalCrossing = tick < horizontalClear[i];
+            long start = metrics != null ? System.nanoTime() : 0;
+            SystemState systemState = controllers[i].step(south.getQueued() + north.getQueued(),
+                    east.getQueued() + west.getQueued(), verticalCrossing, horizontalCrossing);
+            if (metrics != null) {
+                metrics.recordControllerStep(System.nanoTime() - start);
+            }
+            setLight(south, systemState.getVerticalLight());
+            setLight(north, systemState.getVerticalLight());
+            setLight(east, systemState.getHorizontalLight());
+            setLight(west, systemState.getHorizontalLight());
+            if (telemetry != null) {
+                for (Direction direction : DIRECTIONS) {
+                    waitingByDirection[direction.ordinal()] = lanes[laneIndex(i, direction)].getQueued();
+                }
+                telemetry.record(tick, i, passedByIntersection[i], waitingByDirection, systemState,
+                        TelemetryWriter.FLAG_STEPPED
+                                | (verticalCrossing ? TelemetryWriter.FLAG_VERTICAL_CROSSING : 0)
+                                | (horizontalCrossing ? TelemetryWriter.FLAG_HORIZONTAL_CROSSING : 0));
+            }
+        }
+    }
+
+    private void setLight(Lane lane, Color light) {
+        boolean couldPass = lane.isCanPass();
+        lane.setLight(light);
+        if (!couldPass && lane.isCanPass() && lane.getQueued() > 0) {
+            schedule(lane, tick);
+        }
+    }
+
+    /**
+     * queues the cars that reached the stop line of a lane,
+     * lets the first car of the queue enter the intersection if it can,
+     * and schedules the next tick the lane changes, if any.
+     * @param lane
+     */
+    private void updateLane(Lane lane) {
+        lane.setScheduled(-1);
+        while (lane.hasDrivingCars() && lane.getFirstArrival() <= tick) {
+            lane.queueFirstArrival();
+            waiting++;
+        }
+        lane.setBlocked(false);
+        if (lane.getQueued() > 0 && lane.getNextDeparture() <= tick && lane.isCanPass()) {
+            if (lane.getNext() == null || lane.getNext().hasSpace()) {
+                depart(lane);
+            } else {
+                lane.setBlocked(true);
+            }
+        }
+        if (lane.getQueued() > 0 && lane.isCanPass() && !lane.isBlocked()) {
+            schedule(lane, lane.getNextDeparture());
+        }
+        if (lane.hasDrivingCars()) {
+            schedule(lane, lane.getFirstArrival());
+        }
+    }
+
+    /**
+     * the first car of the queue of a lane enters the intersection and drives on to the next lane.
+     * a lane waiting for the space the car left is woken up in the next tick,
+     * like the tick engine which marks the space at the end of a tick.
+     * @param lane
+     */
+    private void depart(Lane lane) {
+        lane.depart(tick, lane.getQueued() > 1 ? QUEUE_HEADWAY : FOLLOW_TICKS);
+        waiting--;
+        passedVehicles++;
+        passedByIntersection[lane.getIntersection()]++;
+        if (lane.getDirection() == Direction.EAST || lane.getDirection() == Direction.WEST) {
+            horizontalClear[lane.getIntersection()] = tick + CLEAR_TICKS;
+        } else {
+            verticalClear[lane.getIntersection()] = tick + CLEAR_TICKS;
+        }
+        if (lane.getNext() != null) {
+            schedule(lane.getNext(), lane.getNext().enter(tick));
+        }
+        if (lane.getPrevious() != null && lane.getPrevious().isBlocked()) {
+            schedule(lane.getPrevious(), tick + 1);
+        }
+    }
+
+    /**
+     * makes sure a lane is updated at the given tick or earlier.
+     * an event replaced by an earlier one stays in the queue and is skipped when it comes up.
+     * @param lane
+     * @param at
+     */
+    private void schedule(Lane lane, long at) {
+        if (lane.getScheduled() == -1 || at < lane.getScheduled()) {
+            lane.setScheduled(at);
+            events.add(new Event(at, Event.LANE, sequence++, lane));
+        }
+    }
+
+    /**
+     * @return the number of intersections, row by row
+     */
+    public int getIntersectionCount() {
+        return controllers.length;
+    }
+
+    /**
+     * @param intersection the index of the intersection on the board
+     * @return the controller of the intersection
+     */
+    public TrafficController getController(int intersection) {
+        return controllers[intersection];
+    }
+
+    public RunStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the metrics of the run, null if the config did not ask for them
+     */
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * writes the remaining telemetry and closes its file, unregisters the metrics and closes the arrivals.
+     * the metrics and the arrivals are released even if writing the telemetry failed.
+     * @throws IOException if writing the telemetry failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (telemetry != null) {
+                telemetry.close();
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.close();
+            }
+            for (Lane lane : lanes) {
+                if (lane.getArrivalProcess() != null) {
+                    lane.getArrivalProcess().close();
+                }
+            }
+        }
+    }
+
+    /**
+     * something that happens at a tick.
+     * events of the same tick are handled controller first, like Simulation.step, then by the order they were created,
+     * so a run is the same for the same seed.
+     */
+    private static class Event implements Comparable<Event> {
+        static final int CONTROL = 0;
+        static final int SPAWN = 1;
+        static final int LANE = 2;
+        private long tick;
+        private int kind;
+        private long sequence;
+        private Lane lane;
+
+        Event(long tick, int kind, long sequence, Lane lane) {
+            this.tick = tick;
+            this.kind = kind;
+            this.sequence = sequence;
+            this.lane = lane;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (tick != other.tick) {
+                return Long.compare(tick, other.tick);
+            }
+            if (kind != other.kind) {
+                return Integer.compare(kind, other.kind);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
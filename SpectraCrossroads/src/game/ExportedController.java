@@ -0,0 +1,48 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * steps a controller exported by ControllerExport.
+ * the export is shared and never changes, this instance only holds the packed current state,
+ * so the controllers of many intersections or of many runs can be stepped on different threads at the same time.
+ * picks uniformly among the possible next states, like SpectraController,
+ * but finds them in another order, so a run is not the same run as with SpectraController for the same seed.
+ */
+public class ExportedController implements TrafficController {
+    private ControllerExport export;
+    private SplittableRandom random;
+    private long currentState = -1;
+    private ControllerExport.Successors successors = new ControllerExport.Successors();
+
+    /**
+     * constructor.
+     * @param export
+     * @param random the source of the choices among the possible next states
+     */
+    public ExportedController(ControllerExport export, SplittableRandom random) {
+        this.export = export;
+        this.random = random;
+    }
+
+    @Override
+    public SystemState step(int verticalWaiting, int horizontalWaiting,
+                            boolean verticalCrossing, boolean horizontalCrossing) {
+        if (currentState < 0) {
+            currentState = export.getInitialState();
+        } else {
+            int maxCars = export.getMaxCars();
+            verticalWaiting = verticalWaiting < maxCars ? verticalWaiting : maxCars;
+            horizontalWaiting = horizontalWaiting < maxCars ? horizontalWaiting : maxCars;
+            export.successors(currentState, CompiledController.envIndex(maxCars,
+                    verticalWaiting, horizontalWaiting, verticalCrossing, horizontalCrossing), successors);
+            if (successors.count == 0) {
+                throw new IllegalStateException("the controller has no successor for vertical queue " + verticalWaiting
+                        + ", horizontal queue " + horizontalWaiting + ", vertical crossing " + verticalCrossing
+                        + ", horizontal crossing " + horizontalCrossing);
+            }
+            currentState = successors.states[random.nextInt(successors.count)];
+        }
+        return export.decode(currentState);
+    }
+}
@@ -2,94 +2,305 @@ package game;
 
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
- * holds the state of the game: number of cars, cars crossing, and traffic lights
+ * holds the state of the game: number of cars, cars crossing, and traffic lights.
+ * the board is a grid of blocks with an intersection in the middle of each block,
+ * a horizontal road through every row of intersections and a vertical road through every column.
+ * cars enter the board at both ends of every road and leave it at the other end,
+ * passing all the intersections on the way.
+ * the board can be partitioned into regions that are updated in parallel,
+ * with the same result as a serial update (see controlVehicles).
+ * a board updated in parallel holds a pool of threads until it is closed.
  */
 public class GameBoard {
-    private static Random rand = new Random();
+    private static final Font COUNTER_FONT = new Font("TimesRoman", Font.PLAIN, 20);
+    private static final int TILE_SIZE = 40;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private SplittableRandom rand;
 
     private Map<Tuple, Tile> boardMap = new HashMap<>();
-    private int horizontalTiles = 20;
-    private int verticalTiles = 15;
-    private Intersection intersection;
-    private RoadQueue southExit;
-    private RoadQueue northExit;
-    private RoadQueue eastExit;
-    private RoadQueue westExit;
-    int eastTurn = 0;
-    int westTurn = 0;
+    private Image background;
+    private int columns;
+    private int rows;
+    private int blockWidth;
+    private int blockHeight;
+    private int horizontalTiles;
+    private int verticalTiles;
+    private Intersection[] intersections;
+    private RoadQueue[] southExits;
+    private RoadQueue[] northExits;
+    private RoadQueue[] eastExits;
+    private RoadQueue[] westExits;
+    private Region[] regions;
+    private ForkJoinPool pool;
+    private java.util.List<Callable<Void>> controlTasks;
+    private java.util.List<Callable<Void>> arrivalTasks;
+    private RoadQueue[] edgeEntrances;
+    private int[] edgeX;
+    private int[] edgeY;
+    private ArrivalProcess[] arrivalProcesses;
+    private long[] nextArrivals;
     int horizontalMin = 30;
     int horizontalMax = 31;
-    int nextEast = getRandomInt(horizontalMin, horizontalMax);
-    int nextWest = getRandomInt(horizontalMin, horizontalMax);
-
-    int northTurn = 0;
-    int southTurn = 0;
     int verticalMin = 30;
     int verticalMax = 31;
-    int nextNorth = getRandomInt(verticalMin, verticalMax);
-    int nextSouth = getRandomInt(verticalMin, verticalMax);
+    private long tick = -1;
+    private long arrivedVehicles = 0;
 
 
-    GameBoard() throws IOException {
+    /**
+     * constructor.
+     * @param rand the source of the arrival times of new cars
+     * @param arrivalFactory the arrivals at the ends of the roads
+     * @param columns the number of intersections in a row
+     * @param rows the number of intersections in a column
+     * @param blockWidth the width of the block around an intersection, in tiles
+     * @param blockHeight the height of the block around an intersection, in tiles
+     * @throws IOException if an arrival process cannot read its input
+     */
+    GameBoard(SplittableRandom rand, ArrivalFactory arrivalFactory, int columns, int rows, int blockWidth, int blockHeight)
+            throws IOException {
+        this.rand = rand;
+        this.columns = columns;
+        this.rows = rows;
+        this.blockWidth = blockWidth;
+        this.blockHeight = blockHeight;
+        this.horizontalTiles = columns * blockWidth;
+        this.verticalTiles = rows * blockHeight;
         generateBoard();
+        createArrivals(arrivalFactory);
+        setHorizontalFrequency(horizontalMin, horizontalMax);
+        setVerticalFrequency(verticalMin, verticalMax);
     }
-    
+
     /**
-     * initializes an empty board and its UI;
+     * sets up the ends of the roads where cars enter the board, in the order cars enter in a tick:
+     * the east and west end of every row, then the north and south end of every column.
+     * @param arrivalFactory
      * @throws IOException
      */
-    private void generateBoard() throws IOException {
-        Tuple intersectionPosition = insertIntersection();
-        this.intersection = new Intersection(intersectionPosition);
-        this.southExit = new RoadQueue(Color.GREEN);
-        this.northExit = new RoadQueue(Color.GREEN);
-        this.eastExit = new RoadQueue(Color.GREEN);
-        this.westExit = new RoadQueue(Color.GREEN);
-        insertRoads(intersectionPosition);
+    private void createArrivals(ArrivalFactory arrivalFactory) throws IOException {
+        int ends = 2 * (rows + columns);
+        edgeEntrances = new RoadQueue[ends];
+        edgeX = new int[ends];
+        edgeY = new int[ends];
+        arrivalProcesses = new ArrivalProcess[ends];
+        nextArrivals = new long[ends];
+        for (int row = 0; row < rows; row++) {
+            int roadY = getIntersection(0, row).getPosition().getY() * 40;
+            edgeEntrances[2 * row] = getIntersection(columns - 1, row).getEntrance(Direction.WEST);
+            edgeX[2 * row] = getWidth();
+            edgeY[2 * row] = roadY;
+            arrivalProcesses[2 * row] = arrivalFactory.create(rand, Direction.WEST, row);
+            edgeEntrances[2 * row + 1] = getIntersection(0, row).getEntrance(Direction.EAST);
+            edgeX[2 * row + 1] = -40;
+            edgeY[2 * row + 1] = roadY + 20;
+            arrivalProcesses[2 * row + 1] = arrivalFactory.create(rand, Direction.EAST, row);
+        }
+        for (int column = 0; column < columns; column++) {
+            int roadX = getIntersection(column, 0).getPosition().getX() * 40;
+            int end = 2 * (rows + column);
+            edgeEntrances[end] = getIntersection(column, 0).getEntrance(Direction.SOUTH);
+            edgeX[end] = roadX;
+            edgeY[end] = -40;
+            arrivalProcesses[end] = arrivalFactory.create(rand, Direction.SOUTH, column);
+            edgeEntrances[end + 1] = getIntersection(column, rows - 1).getEntrance(Direction.NORTH);
+            edgeX[end + 1] = roadX + 20;
+            edgeY[end + 1] = getHeight();
+            arrivalProcesses[end + 1] = arrivalFactory.create(rand, Direction.NORTH, column);
+        }
+    }
+
+    /**
+     * initializes an empty board and its UI;
+     */
+    private void generateBoard() {
+        intersections = new Intersection[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                intersections[row * columns + column] = new Intersection(insertIntersection(column, row));
+            }
+        }
+        southExits = new RoadQueue[columns];
+        northExits = new RoadQueue[columns];
+        for (int column = 0; column < columns; column++) {
+            southExits[column] = new RoadQueue(Color.GREEN, Direction.SOUTH);
+            northExits[column] = new RoadQueue(Color.GREEN, Direction.NORTH);
+        }
+        eastExits = new RoadQueue[rows];
+        westExits = new RoadQueue[rows];
+        for (int row = 0; row < rows; row++) {
+            eastExits[row] = new RoadQueue(Color.GREEN, Direction.EAST);
+            westExits[row] = new RoadQueue(Color.GREEN, Direction.WEST);
+        }
+        connectIntersections();
+        setRegions(1, 1, 1);
+        insertRoads();
         insertGrass();
     }
 
     /**
-     * inserts an intersection Tile in the board
+     * inserts an intersection Tile in the middle of a block of the board
+     * @param column
+     * @param row
      * @return a Tuple of the intersections coords
-     * @throws IOException
      */
-    private Tuple insertIntersection() throws IOException {
-        int intersectionX = horizontalTiles / 2;
-        int intersectionY = verticalTiles / 2;
+    private Tuple insertIntersection(int column, int row) {
+        int intersectionX = column * blockWidth + blockWidth / 2;
+        int intersectionY = row * blockHeight + blockHeight / 2;
         Tuple position = new Tuple(intersectionX, intersectionY);
         boardMap.put(position, new Tile(TileType.INTERSECTION));
         return position;
     }
-    
+
     /**
-     * inserts road tiles on the board relative to the intersection coords
-     * @param intersectionPosition
-     * @throws IOException
+     * sets the exits of every intersection:
+     * the entrance of the next intersection on the road, or the road leaving the board.
      */
-    private void insertRoads(Tuple intersectionPosition) throws IOException {
-        for (int i = 0; i < horizontalTiles; i++) {
-            Tuple tilePosition = new Tuple(i, intersectionPosition.getY());
-            if (boardMap.containsKey(tilePosition))
-                continue;
-            boardMap.put(tilePosition, new Tile(TileType.HORIZONTAL));
+    private void connectIntersections() {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Intersection intersection = getIntersection(column, row);
+                intersection.setExit(Direction.EAST, column + 1 < columns
+                        ? getIntersection(column + 1, row).getEntrance(Direction.EAST) : eastExits[row]);
+                intersection.setExit(Direction.WEST, column > 0
+                        ? getIntersection(column - 1, row).getEntrance(Direction.WEST) : westExits[row]);
+                intersection.setExit(Direction.SOUTH, row + 1 < rows
+                        ? getIntersection(column, row + 1).getEntrance(Direction.SOUTH) : southExits[column]);
+                intersection.setExit(Direction.NORTH, row > 0
+                        ? getIntersection(column, row - 1).getEntrance(Direction.NORTH) : northExits[column]);
+            }
+        }
+    }
+
+    /**
+     * partitions the board into a grid of regions that are updated in parallel.
+     * the partition does not change the results of the simulation, only the way the work is split.
+     * @param regionColumns the number of regions in a row, at most the number of intersections in a row
+     * @param regionRows the number of regions in a column, at most the number of intersections in a column
+     * @param threads the number of threads updating the regions, a single region is always updated by the caller
+     */
+    void setRegions(int regionColumns, int regionRows, int threads) {
+        regionColumns = Math.min(regionColumns, columns);
+        regionRows = Math.min(regionRows, rows);
+        VehicleStatistics earlier = regions == null ? null : getVehicleStatistics();
+        regions = new Region[regionColumns * regionRows];
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = new Region();
+        }
+        if (earlier != null) {
+            regions[0].getStatistics().add(earlier);
+        }
+        Region[] regionOf = new Region[intersections.length];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Region region = regions[row * regionRows / rows * regionColumns + column * regionColumns / columns];
+                region.getIntersections().add(getIntersection(column, row));
+                regionOf[row * columns + column] = region;
+            }
+        }
+        for (int column = 0; column < columns; column++) {
+            regionOf[(rows - 1) * columns + column].getExits().add(southExits[column]);
+        }
+        for (int column = 0; column < columns; column++) {
+            regionOf[column].getExits().add(northExits[column]);
+        }
+        for (int row = 0; row < rows; row++) {
+            regionOf[row * columns].getExits().add(westExits[row]);
+        }
+        for (int row = 0; row < rows; row++) {
+            regionOf[row * columns + columns - 1].getExits().add(eastExits[row]);
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                Region region = regionOf[row * columns + column];
+                Intersection intersection = getIntersection(column, row);
+                addHandoff(region, intersection, Direction.EAST, column + 1 < columns ? regionOf[row * columns + column + 1] : region);
+                addHandoff(region, intersection, Direction.WEST, column > 0 ? regionOf[row * columns + column - 1] : region);
+                addHandoff(region, intersection, Direction.SOUTH, row + 1 < rows ? regionOf[(row + 1) * columns + column] : region);
+                addHandoff(region, intersection, Direction.NORTH, row > 0 ? regionOf[(row - 1) * columns + column] : region);
+            }
+        }
+        closePool();
+        controlTasks = new ArrayList<>();
+        arrivalTasks = new ArrayList<>();
+        if (regions.length > 1 && threads > 1) {
+            pool = new ForkJoinPool(threads);
+            for (Region region : regions) {
+                controlTasks.add(() -> {
+                    controlRegion(region);
+                    return null;
+                });
+                arrivalTasks.add(() -> {
+                    receiveArrivals(region);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * stops the threads that update the regions in parallel and closes the arrival processes.
+     * a closed board can still be updated, one region after the other.
+     */
+    void close() {
+        closePool();
+        for (ArrivalProcess arrivalProcess : arrivalProcesses) {
+            arrivalProcess.close();
         }
-        for (int j = 0; j < verticalTiles; j++) {
-            Tuple tilePosition = new Tuple(intersectionPosition.getX(), j);
-            if (boardMap.containsKey(tilePosition))
-                continue;
-            boardMap.put(tilePosition, new Tile(TileType.VERTICAL));
+    }
+
+    private void closePool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private void addHandoff(Region region, Intersection intersection, Direction direction, Region target) {
+        Region.Handoff handoff = new Region.Handoff(intersection, direction, target);
+        if (target == region) {
+            region.getLocalHandoffs().add(handoff);
+        } else {
+            region.getOutgoingHandoffs().add(handoff);
+        }
+    }
+
+    /**
+     * inserts road tiles on the board through the rows and columns of intersections
+     */
+    private void insertRoads() {
+        for (int row = 0; row < rows; row++) {
+            int roadY = getIntersection(0, row).getPosition().getY();
+            for (int i = 0; i < horizontalTiles; i++) {
+                Tuple tilePosition = new Tuple(i, roadY);
+                if (boardMap.containsKey(tilePosition))
+                    continue;
+                boardMap.put(tilePosition, new Tile(TileType.HORIZONTAL));
+            }
+        }
+        for (int column = 0; column < columns; column++) {
+            int roadX = getIntersection(column, 0).getPosition().getX();
+            for (int j = 0; j < verticalTiles; j++) {
+                Tuple tilePosition = new Tuple(roadX, j);
+                if (boardMap.containsKey(tilePosition))
+                    continue;
+                boardMap.put(tilePosition, new Tile(TileType.VERTICAL));
+            }
         }
     }
     /**
      * inserts grass tiles in all the vacant positions
-     * @throws IOException
      */
-    private void insertGrass() throws IOException {
+    private void insertGrass() {
         for (int i = 0; i < horizontalTiles; i++) {
             for (int j = 0; j < verticalTiles; j++) {
                 Tuple tilePosition = new Tuple(i, j);
@@ -99,329 +310,617 @@ public class GameBoard {
         }
     }
     /**
-     * draws the board with all the elements and the count of waiting cars.
+     * draws a frame of the board: the cars, the traffic lights and the count of waiting cars.
+     * the tiles never change, so they are drawn from a pre-rendered background.
+     * only reads the frame and the layout of the board, so it can be called from the UI thread
+     * while the simulation thread updates the board.
      * @param g
+     * @param frame
      */
-    void draw(Graphics g) {
-        for (Tuple tuple : boardMap.keySet()) {
-            boardMap.get(tuple).draw(tuple, g);
+    void draw(Graphics g, BoardFrame frame) {
+        if (background == null) {
+            background = renderBackground(g);
         }
-        g.drawImage(intersection.getTrafficLightImage(Direction.NORTH), (intersection.getPosition().getX() - 1) * 40, (intersection.getPosition().getY() - 1) * 40, null);
-        g.drawImage(intersection.getTrafficLightImage(Direction.EAST), (intersection.getPosition().getX() + 1) * 40, (intersection.getPosition().getY() - 1) * 40, null);
-        g.drawImage(intersection.getTrafficLightImage(Direction.SOUTH), (intersection.getPosition().getX() + 1) * 40, (intersection.getPosition().getY() + 1) * 40, null);
-        g.drawImage(intersection.getTrafficLightImage(Direction.WEST), (intersection.getPosition().getX() - 1) * 40, (intersection.getPosition().getY() + 1) * 40, null);
-        for (Vehicle vehicle : intersection.getEntrance(Direction.NORTH).getQueue()) {
-            vehicle.draw(g);
+        g.drawImage(background, 0, 0, null);
+        for (int i = 0; i < intersections.length; i++) {
+            Tuple position = intersections[i].getPosition();
+            g.drawImage(Sprites.trafficLight(Direction.NORTH, frame.getLight(i, Direction.NORTH)), (position.getX() - 1) * 40, (position.getY() - 1) * 40, null);
+            g.drawImage(Sprites.trafficLight(Direction.EAST, frame.getLight(i, Direction.EAST)), (position.getX() + 1) * 40, (position.getY() - 1) * 40, null);
+            g.drawImage(Sprites.trafficLight(Direction.SOUTH, frame.getLight(i, Direction.SOUTH)), (position.getX() + 1) * 40, (position.getY() + 1) * 40, null);
+            g.drawImage(Sprites.trafficLight(Direction.WEST, frame.getLight(i, Direction.WEST)), (position.getX() - 1) * 40, (position.getY() + 1) * 40, null);
         }
-        for (Vehicle vehicle : intersection.getEntrance(Direction.EAST).getQueue()) {
-            vehicle.draw(g);
+        for (int i = 0; i < frame.getVehicleCount(); i++) {
+            g.drawImage(Sprites.car(frame.getVehicleDirection(i)), frame.getVehicleX(i), frame.getVehicleY(i), null);
         }
-        for (Vehicle vehicle : intersection.getEntrance(Direction.SOUTH).getQueue()) {
-            vehicle.draw(g);
-        }
-        for (Vehicle vehicle : intersection.getEntrance(Direction.WEST).getQueue()) {
-            vehicle.draw(g);
+
+        g.setFont(COUNTER_FONT);
+        g.setColor(java.awt.Color.white);
+        for (int i = 0; i < intersections.length; i++) {
+            int x = intersections[i].getPosition().getX() * 40;
+            int y = intersections[i].getPosition().getY() * 40;
+            g.drawString(String.valueOf(frame.getWaiting(i, Direction.NORTH)), x + 55, y + 120);
+            g.drawString(String.valueOf(frame.getWaiting(i, Direction.SOUTH)), x - 25, y - 60);
+            g.drawString(String.valueOf(frame.getWaiting(i, Direction.EAST)), x - 80, y + 67);
+            g.drawString(String.valueOf(frame.getWaiting(i, Direction.WEST)), x + 100, y - 15);
         }
-        for (Vehicle vehicle : southExit.getQueue()) {
-            vehicle.draw(g);
+    }
+
+    /**
+     * takes a snapshot of the cars, the traffic lights and the waiting counters for drawing.
+     * @param tick the tick the snapshot is taken at
+     * @return
+     */
+    BoardFrame snapshot(long tick) {
+        java.util.List<RoadQueue> queues = new ArrayList<>();
+        for (Intersection intersection : intersections) {
+            queues.add(intersection.getEntrance(Direction.SOUTH));
+            queues.add(intersection.getEntrance(Direction.WEST));
+            queues.add(intersection.getEntrance(Direction.NORTH));
+            queues.add(intersection.getEntrance(Direction.EAST));
         }
-        for (Vehicle vehicle : northExit.getQueue()) {
-            vehicle.draw(g);
+        queues.addAll(Arrays.asList(southExits));
+        queues.addAll(Arrays.asList(northExits));
+        queues.addAll(Arrays.asList(westExits));
+        queues.addAll(Arrays.asList(eastExits));
+        int count = 0;
+        for (RoadQueue queue : queues) {
+            count += queue.size();
         }
-        for (Vehicle vehicle : westExit.getQueue()) {
-            vehicle.draw(g);
+        int[] vehicleX = new int[count];
+        int[] vehicleY = new int[count];
+        byte[] vehicleDirection = new byte[count];
+        int i = 0;
+        for (RoadQueue queue : queues) {
+            for (int car = 0; car < queue.size(); car++) {
+                vehicleX[i] = queue.getX(car);
+                vehicleY[i] = queue.getY(car);
+                vehicleDirection[i] = (byte) queue.getDirection().ordinal();
+                i++;
+            }
         }
-        for (Vehicle vehicle : eastExit.getQueue()) {
-            vehicle.draw(g);
+        int directions = Direction.values().length;
+        Color[] lights = new Color[intersections.length * directions];
+        int[] waiting = new int[intersections.length * directions];
+        for (int intersection = 0; intersection < intersections.length; intersection++) {
+            for (Direction direction : Direction.values()) {
+                lights[intersection * directions + direction.ordinal()] = intersections[intersection].getTrafficLight(direction);
+                waiting[intersection * directions + direction.ordinal()] = intersections[intersection].getWaitingCount(direction);
+            }
         }
-        
-        g.setFont(new Font("TimesRoman", Font.PLAIN, 20));
-        g.setColor(java.awt.Color.white);
-        g.drawString(String.valueOf(intersection.getWaitingList(Direction.NORTH).size()), 455, 400);
-        g.drawString(String.valueOf(intersection.getWaitingList(Direction.SOUTH).size()), 375, 220);
-        g.drawString(String.valueOf(intersection.getWaitingList(Direction.EAST).size()), 320, 347);
-        g.drawString(String.valueOf(intersection.getWaitingList(Direction.WEST).size()), 500, 265);
+        return new BoardFrame(tick, vehicleX, vehicleY, vehicleDirection, lights, waiting);
     }
 
 
 
+    /**
+     * renders all the tiles of the board into a single image,
+     * compatible with the device of the given graphics so it can be blitted in one call.
+     * @param g the graphics the background will be drawn on
+     * @return
+     */
+    private Image renderBackground(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        BufferedImage image;
+        if (g instanceof Graphics2D && !GraphicsEnvironment.isHeadless()) {
+            image = ((Graphics2D) g).getDeviceConfiguration().createCompatibleImage(width, height);
+        } else {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics imageGraphics = image.createGraphics();
+        for (Map.Entry<Tuple, Tile> tile : boardMap.entrySet()) {
+            tile.getValue().draw(tile.getKey(), imageGraphics);
+        }
+        imageGraphics.dispose();
+        return image;
+    }
+
+    /**
+     * sets the range of ticks between two incoming cars in the vertical roads
+     * and restarts the countdown to the next car.
+     * @param min
+     * @param max
+     */
+    void setVerticalFrequency(int min, int max) {
+        verticalMin = min;
+        verticalMax = max;
+        for (int end = 2 * rows; end < arrivalProcesses.length; end++) {
+            restartArrivals(end, min, max);
+        }
+    }
+
+    /**
+     * sets the range of ticks between two incoming cars in the horizontal roads
+     * and restarts the countdown to the next car.
+     * @param min
+     * @param max
+     */
+    void setHorizontalFrequency(int min, int max) {
+        horizontalMin = min;
+        horizontalMax = max;
+        for (int end = 0; end < 2 * rows; end++) {
+            restartArrivals(end, min, max);
+        }
+    }
 
-    int getRandomInt(int min, int max) {
-        return rand.nextInt((max + 1) - min) + min;
+    private void restartArrivals(int end, int min, int max) {
+        arrivalProcesses[end].setInterval(min, max);
+        nextArrivals[end] = arrivalProcesses[end].nextArrival(tick);
     }
 
     /**
      * updates the game board.
-     * shoots new cars to the board in the required time intervals
+     * shoots new cars to the board at both ends of every road when their arrival processes say so
      * controls all the vehicles on the board.
-     * @throws IOException
      */
-    void updateGameBoard() throws IOException {
-        eastTurn++;
-        westTurn++;
-        northTurn++;
-        southTurn++;
-        if (eastTurn == nextEast) {
-            intersection.getEntrance(Direction.EAST).getQueue().add(new Vehicle(new Tuple(800, 280), Direction.WEST));
-            eastTurn = 0;
-            nextEast = getRandomInt(horizontalMin, horizontalMax);
-        }
-        if (westTurn == nextWest) {
-            intersection.getEntrance(Direction.WEST).getQueue().add(new Vehicle(new Tuple(-40, 300), Direction.EAST));
-            westTurn = 0;
-            nextWest = getRandomInt(horizontalMin, horizontalMax);
-        }
-        if (northTurn == nextNorth) {
-            intersection.getEntrance(Direction.NORTH).getQueue().add(new Vehicle(new Tuple(400, -40), Direction.SOUTH));
-            northTurn = 0;
-            nextNorth = getRandomInt(verticalMin, verticalMax);
-        }
-        if (southTurn == nextSouth) {
-            intersection.getEntrance(Direction.SOUTH).getQueue().add(new Vehicle(new Tuple(420, 600), Direction.NORTH));
-            southTurn = 0;
-            nextSouth = getRandomInt(verticalMin, verticalMax);
+    void updateGameBoard() {
+        tick++;
+        for (int end = 0; end < edgeEntrances.length; end++) {
+            if (nextArrivals[end] == tick) {
+                if (arrivalProcesses[end].bringsCar()) {
+                    edgeEntrances[end].add(edgeX[end], edgeY[end], tick);
+                    arrivedVehicles++;
+                }
+                nextArrivals[end] = arrivalProcesses[end].nextArrival(tick);
+            }
         }
 
         controlVehicles();
+        if (tick % VehicleStatistics.MINUTE_TICKS == 0) {
+            recordMinute();
+        }
+    }
+
+    /**
+     * ends a simulated minute: adds up the cars the regions counted in it and records them in the first region.
+     */
+    private void recordMinute() {
+        VehicleStatistics first = regions[0].getStatistics();
+        for (int i = 1; i < regions.length; i++) {
+            first.takeMinute(regions[i].getStatistics());
+        }
+        first.recordMinute();
     }
 
     /**
      * controls the vehicles on the board:
      * moves cars that can move, removes cars that have left the screen,
      * and stops cars that cannot move.
+     * cars that entered an intersection join their exit road only at the end of the tick,
+     * so the order in which the intersections are controlled does not matter.
+     * the regions are controlled in parallel, then each region receives the cars that crossed into it.
+     * while controlling, a region only changes its own roads
+     * and only reads the space marks of its neighbours, which do not change before the arrivals.
+     * every road has a single intersection feeding it,
+     * so the order in which cars arrive is the same for every partition and number of threads.
      */
     private void controlVehicles() {
-        LinkedList<Vehicle> southExit = this.southExit.getQueue();
-        LinkedList<Vehicle> northExit = this.northExit.getQueue();
-        LinkedList<Vehicle> westExit = this.westExit.getQueue();
-        LinkedList<Vehicle> eastExit = this.eastExit.getQueue();
+        if (pool == null) {
+            for (Region region : regions) {
+                controlRegion(region);
+            }
+            for (Region region : regions) {
+                receiveArrivals(region);
+            }
+        } else {
+            invokeAll(controlTasks);
+            invokeAll(arrivalTasks);
+        }
+    }
 
-        controlExit(southExit);
-        controlExit(northExit);
-        controlExit(westExit);
-        controlExit(eastExit);
+    /**
+     * runs tasks on the pool and waits for all of them to finish.
+     * @param tasks
+     */
+    private void invokeAll(java.util.List<Callable<Void>> tasks) {
+        for (Future<Void> task : pool.invokeAll(tasks)) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while updating the board", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
 
-        LinkedList<Vehicle> northEntrance = intersection.getEntrance(Direction.NORTH).getQueue();
-        LinkedList<Vehicle> southEntrance = intersection.getEntrance(Direction.SOUTH).getQueue();
-        LinkedList<Vehicle> eastEntrance = intersection.getEntrance(Direction.EAST).getQueue();
-        LinkedList<Vehicle> westEntrance = intersection.getEntrance(Direction.WEST).getQueue();
+    /**
+     * moves the cars of a region and hands the cars that entered its intersections to their exits,
+     * or posts them to the neighbouring region.
+     * @param region
+     */
+    private void controlRegion(Region region) {
+        VehicleStatistics statistics = region.getStatistics();
+        for (RoadQueue exit : region.getExits()) {
+            controlExit(statistics, exit);
+        }
 
-        controlVehiclesInQueue(northEntrance);
-        controlVehiclesInQueue(southEntrance);
-        controlVehiclesInQueue(eastEntrance);
-        controlVehiclesInQueue(westEntrance);
+        for (Intersection intersection : region.getIntersections()) {
+            controlVehiclesInQueue(statistics, intersection, intersection.getEntrance(Direction.SOUTH));
+            controlVehiclesInQueue(statistics, intersection, intersection.getEntrance(Direction.NORTH));
+            controlVehiclesInQueue(statistics, intersection, intersection.getEntrance(Direction.WEST));
+            controlVehiclesInQueue(statistics, intersection, intersection.getEntrance(Direction.EAST));
+            statistics.recordLights(intersection.getEntrance(Direction.SOUTH).getLight(),
+                    intersection.getEntrance(Direction.WEST).getLight());
+        }
+        for (Region.Handoff handoff : region.getLocalHandoffs()) {
+            handoff.handOver();
+        }
+        for (Region.Handoff handoff : region.getOutgoingHandoffs()) {
+            if (handoff.hasCars()) {
+                handoff.getTarget().getArrivals().offer(handoff);
+            }
+        }
+    }
 
+    /**
+     * moves the cars that crossed into a region from its neighbours to their roads,
+     * and marks the space on the roads of the region for the next tick.
+     * @param region
+     */
+    private void receiveArrivals(Region region) {
+        Region.Handoff handoff;
+        while ((handoff = region.getArrivals().poll()) != null) {
+            handoff.handOver();
+        }
+        for (Intersection intersection : region.getIntersections()) {
+            for (Direction direction : DIRECTIONS) {
+                markSpace(intersection, intersection.getEntrance(direction));
+            }
+        }
     }
 
     /**
-     * controls vehicles that have passed an intersection and are towards an exit.
+     * controls vehicles that have passed their last intersection and are towards the edge of the board.
      * moves them until they have left the screen then removes them.
+     * cars in an exit never overtake each other, so the cars that left the screen are always first.
+     * @param statistics the statistics of the region of the exit
      * @param exit
      */
-    private void controlExit(LinkedList<Vehicle> exit) {
-        for (ListIterator<Vehicle> iterator = exit.listIterator(); iterator.hasNext(); ) {
-            Vehicle currentVehicle = iterator.next();
-            currentVehicle.drive(true);
-            if (leftTheScreen(currentVehicle)) {
-                iterator.remove();
-            }
+    private void controlExit(VehicleStatistics statistics, RoadQueue exit) {
+        for (int car = 0; car < exit.size(); car++) {
+            exit.drive(car, true);
+        }
+        while (exit.size() > 0 && leftTheScreen(exit, 0)) {
+            statistics.recordExit(tick - exit.getEntered(0));
+            exit.removeFirst();
         }
     }
-    
+
     /**
      * Determines if a given car has left the screen.
-     * @param currentVehicle
+     * @param queue
+     * @param car
      * @return
      */
-    private boolean leftTheScreen(Vehicle currentVehicle) {
-        switch (currentVehicle.getDirection()) {
+    private boolean leftTheScreen(RoadQueue queue, int car) {
+        switch (queue.getDirection()) {
             case SOUTH:
-                return currentVehicle.getPosition().getY() > 600;
+                return queue.getY(car) > getHeight();
             case NORTH:
-                return currentVehicle.getPosition().getY() < -40;
+                return queue.getY(car) < -40;
             case EAST:
-                return currentVehicle.getPosition().getX() > 800;
+                return queue.getX(car) > getWidth();
             case WEST:
-                return currentVehicle.getPosition().getX() < -40;
+                return queue.getX(car) < -40;
         }
         return false;
     }
-    
+
     /**
      * controls the cars in a given queue.
      * moves them if they can move.
-     * adds them to the waiting list if they cannot.
-     * passes them to the exit queue 
-     * and removes them from the waiting list if they entered the intersection
+     * marks them as waiting if they cannot.
+     * passes them to the exit queue if they entered the intersection,
+     * after which the next car is the first of the queue.
+     * @param statistics the statistics of the region of the intersection
+     * @param intersection the intersection at the end of the queue
      * @param queue
      */
-    private void controlVehiclesInQueue(LinkedList<Vehicle> queue) {
-        for (ListIterator<Vehicle> iterator = queue.listIterator(); iterator.hasNext(); ) {
-            Vehicle currentVehicle = iterator.next();
-            if (currentVehicle == queue.getFirst()) {
-                if (isFirstNotYetInIntersection(currentVehicle)) {
-                    currentVehicle.drive(true);
-                    if (isFirstVehicleBeforeIntersection(currentVehicle)) {
-                        intersection.getWaitingList(currentVehicle.getDirection()).add(currentVehicle);
+    private void controlVehiclesInQueue(VehicleStatistics statistics, Intersection intersection, RoadQueue queue) {
+        for (int car = 0; car < queue.size(); car++) {
+            if (car == 0) {
+                if (isFirstNotYetInIntersection(intersection, queue)) {
+                    queue.drive(car, true);
+                    if (isFirstVehicleBeforeIntersection(intersection, queue)) {
+                        queue.setWaiting(car, tick);
                     }
 
                 } else {
-                    if (isGreenLight(currentVehicle.getDirection())) {
-                        currentVehicle.drive(true);
-                        passVehicleToNextQueue(currentVehicle);
-                        iterator.remove();
+                    if (isGreenLight(intersection, queue.getDirection()) && hasSpaceAfterIntersection(intersection, queue)) {
+                        queue.drive(car, true);
+                        passVehicleToNextQueue(statistics, intersection, queue);
+                        car--;
                     } else {
-                        currentVehicle.drive(false);
+                        queue.drive(car, false);
                     }
                 }
 
             } else {
-                iterator.previous();
-                Vehicle vehicleInFront = iterator.previous();
-                if (hasSpaceToMove(currentVehicle, vehicleInFront)) {
-                    currentVehicle.drive(true);
+                if (hasSpaceToMove(queue, car)) {
+                    queue.drive(car, true);
                 } else {
-                    currentVehicle.drive(false);
-                    intersection.getWaitingList(currentVehicle.getDirection()).add(currentVehicle);
+                    queue.drive(car, false);
+                    queue.setWaiting(car, tick);
                 }
-                iterator.next();
-                iterator.next();
             }
         }
+        statistics.recordQueue(queue.getDirection(), queue.getWaitingCount());
     }
 
-    private boolean isGreenLight(Direction direction) {
+    private boolean isGreenLight(Intersection intersection, Direction direction) {
         return intersection.getEntrance(direction).isCanPass();
     }
 
     /**
      * determines if a given vehicle can move
      * returns true if it is not behind a standing car or if it is not at a red light.
-     * @param currentVehicle
-     * @param vehicleInFront
+     * @param queue
+     * @param car a car that is not the first in the queue
      * @return
      */
-    private boolean hasSpaceToMove(Vehicle currentVehicle, Vehicle vehicleInFront) {
-        switch (currentVehicle.getDirection()) {
+    private boolean hasSpaceToMove(RoadQueue queue, int car) {
+        switch (queue.getDirection()) {
             case SOUTH:
-                return currentVehicle.getPosition().getY() <= vehicleInFront.getPosition().getY() - 40;
+                return queue.getY(car) <= queue.getY(car - 1) - 40;
             case NORTH:
-                return currentVehicle.getPosition().getY() >= vehicleInFront.getPosition().getY() + 40;
+                return queue.getY(car) >= queue.getY(car - 1) + 40;
             case EAST:
-                return currentVehicle.getPosition().getX() <= vehicleInFront.getPosition().getX() - 40;
+                return queue.getX(car) <= queue.getX(car - 1) - 40;
             case WEST:
-                return currentVehicle.getPosition().getX() >= vehicleInFront.getPosition().getX() + 40;
+                return queue.getX(car) >= queue.getX(car - 1) + 40;
         }
         return false;
     }
 
     /**
-     * pass a give vehicle from the intersection queue to the exit queue
-     * @param vehicle
+     * determines if the first vehicle of a queue can cross the intersection without blocking it:
+     * the road after the intersection, as it was marked at the end of the last tick,
+     * leaves room for one more car behind the intersection even if all its cars stop.
+     * roads leaving the board never block.
+     * @param intersection
+     * @param queue
+     * @return
+     */
+    private boolean hasSpaceAfterIntersection(Intersection intersection, RoadQueue queue) {
+        return intersection.getExit(queue.getDirection()).getSpaceMark() >= getStopLine(intersection, queue) + 120;
+    }
+
+    /**
+     * marks how far back an entrance queue can reach, see hasSpaceAfterIntersection.
+     * cars never drive backwards, and a car only stops for good right behind the car in front of it
+     * or at the stop line, so no car will stop behind the current last car
+     * nor behind the place of the last car in a queue packed up to the stop line.
+     * @param intersection the intersection at the end of the queue
+     * @param queue
+     */
+    private void markSpace(Intersection intersection, RoadQueue queue) {
+        if (queue.size() == 0) {
+            queue.setSpaceMark(Integer.MAX_VALUE);
+        } else {
+            int last = queue.size() - 1;
+            queue.setSpaceMark(Math.max(queue.getProgress(last), getStopLine(intersection, queue) - 40 * last));
+        }
+    }
+
+    /**
+     * the progress (see RoadQueue.getProgress) of the first car of a queue standing at the entrance to an intersection
+     * @param intersection
+     * @param queue
+     * @return
      */
-    private void passVehicleToNextQueue(Vehicle vehicle) {
-        switch (vehicle.getDirection()) {
+    private int getStopLine(Intersection intersection, RoadQueue queue) {
+        switch (queue.getDirection()) {
             case SOUTH:
-                southExit.getQueue().add(vehicle);
-                break;
+                return intersection.getPosition().getY() * 40 - 40;
             case NORTH:
-                northExit.getQueue().add(vehicle);
-                break;
+                return -(intersection.getPosition().getY() * 40 + 40);
             case EAST:
-                eastExit.getQueue().add(vehicle);
-                break;
+                return intersection.getPosition().getX() * 40 - 40;
             case WEST:
-                westExit.getQueue().add(vehicle);
-                break;
+                return -(intersection.getPosition().getX() * 40 + 40);
         }
-        intersection.getWaitingList(vehicle.getDirection()).remove(vehicle);
+        return 0;
     }
 
     /**
-     * determines if a given vehicle is at the entrance to an intersection
-     * @param vehicle
+     * pass the first vehicle of an intersection queue to the exit queue
+     * and records how long it waited.
+     * @param statistics
+     * @param intersection
+     * @param queue
+     */
+    private void passVehicleToNextQueue(VehicleStatistics statistics, Intersection intersection, RoadQueue queue) {
+        long stopped = queue.getStopped(0);
+        statistics.recordEntry(queue.getDirection(), stopped < 0 ? 0 : tick - stopped);
+        intersection.passFirstVehicle(queue.getDirection());
+    }
+
+    /**
+     * determines if the first vehicle of a queue is at the entrance to an intersection
+     * @param intersection
+     * @param queue
      * @return
      */
-    private boolean isFirstVehicleBeforeIntersection(Vehicle vehicle) {
-        switch (vehicle.getDirection()) {
+    private boolean isFirstVehicleBeforeIntersection(Intersection intersection, RoadQueue queue) {
+        switch (queue.getDirection()) {
             case SOUTH:
-                return vehicle.getPosition().getY() == intersection.getPosition().getY() * 40 - 40;
+                return queue.getY(0) == intersection.getPosition().getY() * 40 - 40;
             case NORTH:
-                return vehicle.getPosition().getY() == intersection.getPosition().getY() * 40 + 40;
+                return queue.getY(0) == intersection.getPosition().getY() * 40 + 40;
             case EAST:
-                return vehicle.getPosition().getX() == intersection.getPosition().getX() * 40 - 40;
+                return queue.getX(0) == intersection.getPosition().getX() * 40 - 40;
             case WEST:
-                return vehicle.getPosition().getX() == intersection.getPosition().getX() * 40 + 40;
+                return queue.getX(0) == intersection.getPosition().getX() * 40 + 40;
         }
         return false;
 
     }
 
     /**
-     * determines if the intersection is occupied by a horizontal vehicle
+     * determines if an intersection is occupied by a horizontal vehicle
+     * @param intersection
      * @return
      */
-    public boolean isHorizontalPassing() {
+    public boolean isHorizontalPassing(Intersection intersection) {
 
-        return isVehicleInIntersection(eastExit.getQueue()) || isVehicleInIntersection(westExit.getQueue());
+        return isVehicleInIntersection(intersection, intersection.getExit(Direction.EAST))
+                || isVehicleInIntersection(intersection, intersection.getExit(Direction.WEST));
 
     }
-    
+
     /**
-     * determines if the intersection is occupied by a vertical vehicle
+     * determines if an intersection is occupied by a vertical vehicle
+     * @param intersection
      * @return
      */
-    public boolean isVerticalPassing() {
+    public boolean isVerticalPassing(Intersection intersection) {
 
-        return isVehicleInIntersection(northExit.getQueue()) || isVehicleInIntersection(southExit.getQueue());
+        return isVehicleInIntersection(intersection, intersection.getExit(Direction.NORTH))
+                || isVehicleInIntersection(intersection, intersection.getExit(Direction.SOUTH));
 
     }
 
     /**
-     * determines if a vehicle from an exit queue is still in the intersection
+     * determines if the last vehicle that passed an intersection to an exit queue is still in the intersection
+     * @param intersection
      * @param queue
      * @return
      */
-    private boolean isVehicleInIntersection(LinkedList<Vehicle> queue) {
+    private boolean isVehicleInIntersection(Intersection intersection, RoadQueue queue) {
         if (queue.size() == 0)
             return false;
-        Vehicle vehicle = queue.getLast();
-        switch (vehicle.getDirection()) {
+        int last = queue.size() - 1;
+        switch (queue.getDirection()) {
             case SOUTH:
-                return vehicle.getPosition().getY() < intersection.getPosition().getY() * 40 + 35;
+                return queue.getY(last) < intersection.getPosition().getY() * 40 + 35;
             case NORTH:
-                return vehicle.getPosition().getY() > intersection.getPosition().getY() * 40 - 45;
+                return queue.getY(last) > intersection.getPosition().getY() * 40 - 45;
             case EAST:
-                return vehicle.getPosition().getX() < intersection.getPosition().getX() * 40 + 35;
+                return queue.getX(last) < intersection.getPosition().getX() * 40 + 35;
             case WEST:
-                return vehicle.getPosition().getX() > intersection.getPosition().getX() * 40 - 45;
+                return queue.getX(last) > intersection.getPosition().getX() * 40 - 45;
         }
         return false;
     }
 
     /**
-     * determines if a given vehicle is not yet arrived to intersection
-     * @param vehicle
+     * determines if the first vehicle of a queue is not yet arrived to intersection
+     * @param intersection
+     * @param queue
      * @return
      */
-    private boolean isFirstNotYetInIntersection(Vehicle vehicle) {
-        switch (vehicle.getDirection()) {
+    private boolean isFirstNotYetInIntersection(Intersection intersection, RoadQueue queue) {
+        switch (queue.getDirection()) {
             case SOUTH:
-                return vehicle.getPosition().getY() < intersection.getPosition().getY() * 40 - 40;
+                return queue.getY(0) < intersection.getPosition().getY() * 40 - 40;
             case NORTH:
-                return vehicle.getPosition().getY() > intersection.getPosition().getY() * 40 + 40;
+                return queue.getY(0) > intersection.getPosition().getY() * 40 + 40;
             case EAST:
-                return vehicle.getPosition().getX() < intersection.getPosition().getX() * 40 - 40;
+                return queue.getX(0) < intersection.getPosition().getX() * 40 - 40;
             case WEST:
-                return vehicle.getPosition().getX() > intersection.getPosition().getX() * 40 + 40;
+                return queue.getX(0) > intersection.getPosition().getX() * 40 + 40;
 
         }
         return true;
 
     }
 
-    public Intersection getIntersection() {
-        return intersection;
+    /**
+     * @return the number of intersections, row by row
+     */
+    public int getIntersectionCount() {
+        return intersections.length;
+    }
+
+    public Intersection getIntersection(int index) {
+        return intersections[index];
+    }
+
+    public Intersection getIntersection(int column, int row) {
+        return intersections[row * columns + column];
+    }
+
+    /**
+     * @return the number of cars waiting at all the intersections
+     */
+    public int getWaitingCount() {
+        int waiting = 0;
+        for (Intersection intersection : intersections) {
+            for (Direction direction : DIRECTIONS) {
+                waiting += intersection.getWaitingCount(direction);
+            }
+        }
+        return waiting;
+    }
+
+    /**
+     * @return the number of cars on the board
+     */
+    int getVehicleCount() {
+        int count = 0;
+        for (Intersection intersection : intersections) {
+            for (Direction direction : DIRECTIONS) {
+                count += intersection.getEntrance(direction).size();
+            }
+        }
+        for (int column = 0; column < southExits.length; column++) {
+            count += southExits[column].size() + northExits[column].size();
+        }
+        for (int row = 0; row < eastExits.length; row++) {
+            count += eastExits[row].size() + westExits[row].size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the width of the board in pixels
+     */
+    public int getWidth() {
+        return horizontalTiles * TILE_SIZE;
+    }
+
+    /**
+     * @return the height of the board in pixels
+     */
+    public int getHeight() {
+        return verticalTiles * TILE_SIZE;
+    }
+
+    /**
+     * @return the number of cars that entered the board
+     */
+    public long getArrivedVehicles() {
+        return arrivedVehicles;
+    }
+
+    /**
+     * adds up the statistics of the cars of all the regions.
+     * must not be called while the board is updated.
+     * @return
+     */
+    public VehicleStatistics getVehicleStatistics() {
+        VehicleStatistics statistics = new VehicleStatistics();
+        for (Region region : regions) {
+            statistics.add(region.getStatistics());
+        }
+        statistics.setTicks(tick + 1);
+        return statistics;
+    }
+
+    /**
+     * @return the number of times cars entered an intersection
+     */
+    public long getPassedVehicles() {
+        long passed = 0;
+        for (Intersection intersection : intersections) {
+            passed += intersection.getPassedVehicles();
+        }
+        return passed;
     }
 
 }
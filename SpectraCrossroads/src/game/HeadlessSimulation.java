@@ -0,0 +1,62 @@
+package game;
+
+import java.util.function.IntFunction;
+
+/**
+ * runs the simulation without any UI, as fast as the CPU allows.
+ * configured by command line arguments or a properties file, see SimulationConfig.
+ */
+public class HeadlessSimulation {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        SimulationConfig config = SimulationConfig.fromArgs(args);
+        if (config.isEventEngine()) {
+            try (EventSimulation simulation = new EventSimulation(config)) {
+                long start = System.nanoTime();
+                simulation.advance(config.getTicks());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                report(simulation.getTick(), seconds, config, simulation.getStatistics());
+                printCaches(simulation.getIntersectionCount(), simulation::getController);
+                printMetrics(simulation.getMetrics());
+            }
+            return;
+        }
+        try (Simulation simulation = new Simulation(config)) {
+            long start = System.nanoTime();
+            for (long i = 0; i < config.getTicks(); i++) {
+                simulation.step();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report(simulation.getTick(), seconds, config, simulation.getStatistics());
+            System.out.println(simulation.getGameBoard().getVehicleStatistics());
+            printCaches(simulation.getGameBoard().getIntersectionCount(), simulation::getController);
+            printMetrics(simulation.getMetrics());
+        }
+    }
+
+    private static void report(long ticks, double seconds, SimulationConfig config, RunStatistics statistics) {
+        System.out.printf("simulated %d ticks in %.3f sec (%.0f ticks/sec), seed %d%n",
+                ticks, seconds, ticks / seconds, config.getSeed());
+        System.out.println(statistics);
+    }
+
+    private static void printCaches(int intersections, IntFunction<TrafficController> controllers) {
+        SuccessorCache printed = null;
+        for (int i = 0; i < intersections; i++) {
+            if (controllers.apply(i) instanceof SpectraController) {
+                SuccessorCache cache = ((SpectraController) controllers.apply(i)).getCache();
+                if (cache != null && cache != printed) {
+                    System.out.println(cache);
+                    printed = cache;
+                }
+            }
+        }
+    }
+
+    private static void printMetrics(SimulationMetrics metrics) {
+        if (metrics != null) {
+            System.out.print(metrics.getSummary());
+        }
+    }
+}
@@ -1,41 +1,31 @@
 package game;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
- * holds the state of the intersections, its 4 roadQueus, its 4 waiting lists and its graphics.
+ * holds the state of the intersections, its 4 roadQueus and its graphics.
+ * the cars waiting to enter the intersection are marked and counted in the queues.
+ * the exit in each direction is the entrance of the neighbouring intersection,
+ * or a road leaving the board at the edge of the grid.
+ * cars that entered the intersection during a tick are held in the leaving queues
+ * and handed to the exits at the end of the tick.
  *
  */
 public class Intersection {
     private Tuple position;
-    private Set<Vehicle> waitingNorth = new HashSet<>();
-    private Set<Vehicle> waitingSouth = new HashSet<>();
-    private Set<Vehicle> waitingWest = new HashSet<>();
-    private Set<Vehicle> waitingEast = new HashSet<>();
-    private RoadQueue northEntrance = new RoadQueue(Color.GREEN);
-    private RoadQueue southEntrance = new RoadQueue(Color.GREEN);
-    private RoadQueue eastEntrance = new RoadQueue(Color.RED);
-    private RoadQueue westEntrance = new RoadQueue(Color.RED);
-    private BufferedImage greenLightNorth = ImageIO.read(new File("img/greenLightNorth.png"));
-    private BufferedImage redLightNorth = ImageIO.read(new File("img/redLightNorth.png"));
-    private BufferedImage offLightNorth = ImageIO.read(new File("img/offLightNorth.png"));
-    private BufferedImage greenLightEast = ImageIO.read(new File("img/greenLightEast.png"));
-    private BufferedImage redLightEast = ImageIO.read(new File("img/redLightEast.png"));
-    private BufferedImage offLightEast = ImageIO.read(new File("img/offLightEast.png"));
-    private BufferedImage greenLightSouth = ImageIO.read(new File("img/greenLightSouth.png"));
-    private BufferedImage redLightSouth = ImageIO.read(new File("img/redLightSouth.png"));
-    private BufferedImage offLightSouth = ImageIO.read(new File("img/offLightSouth.png"));
-    private BufferedImage greenLightWest = ImageIO.read(new File("img/greenLightWest.png"));
-    private BufferedImage redLightWest = ImageIO.read(new File("img/redLightWest.png"));
-    private BufferedImage offLightWest = ImageIO.read(new File("img/offLightWest.png"));
+    private RoadQueue[] exits = new RoadQueue[Direction.values().length];
+    private RoadQueue[] leaving = new RoadQueue[Direction.values().length];
+    private long passedVehicles = 0;
+    private RoadQueue northEntrance = new RoadQueue(Color.GREEN, Direction.SOUTH);
+    private RoadQueue southEntrance = new RoadQueue(Color.GREEN, Direction.NORTH);
+    private RoadQueue eastEntrance = new RoadQueue(Color.RED, Direction.WEST);
+    private RoadQueue westEntrance = new RoadQueue(Color.RED, Direction.EAST);
 
-    public Intersection(Tuple position) throws IOException {
+    public Intersection(Tuple position) {
         this.position = position;
+        for (Direction direction : Direction.values()) {
+            leaving[direction.ordinal()] = new RoadQueue(Color.GREEN, direction);
+        }
     }
 
     public Tuple getPosition() {
@@ -61,52 +51,85 @@ public class Intersection {
     }
     
     /**
-     * gets the waiting list for a given direction of the intersection
+     * gets the road the cars driving in a given direction take after the intersection
      * @param direction
      * @return
      */
-    public Set<Vehicle> getWaitingList(Direction direction){
-        switch (direction){
-            case EAST:
-                return waitingWest;
-            case SOUTH:
-                return waitingNorth;
-            case WEST:
-                return waitingEast;
-            case NORTH:
-                return waitingSouth;
+    public RoadQueue getExit(Direction direction) {
+        return exits[direction.ordinal()];
+    }
+
+    void setExit(Direction direction, RoadQueue exit) {
+        exits[direction.ordinal()] = exit;
+    }
+
+    /**
+     * gets the cars that entered the intersection in a given direction during the current tick
+     * @param direction
+     * @return
+     */
+    RoadQueue getLeaving(Direction direction) {
+        return leaving[direction.ordinal()];
+    }
+
+    /**
+     * moves the first car of an entrance into the intersection.
+     * it joins the exit only when the leaving cars are handed over.
+     * @param direction
+     */
+    void passFirstVehicle(Direction direction) {
+        getEntrance(direction).moveFirstTo(leaving[direction.ordinal()]);
+        passedVehicles++;
+    }
+
+    /**
+     * moves the cars that entered the intersection in a given direction during the tick to the end of their exit.
+     * @param direction
+     */
+    void handOverLeavingCars(Direction direction) {
+        RoadQueue cars = leaving[direction.ordinal()];
+        while (cars.size() > 0) {
+            cars.moveFirstTo(exits[direction.ordinal()]);
         }
-        return null;
     }
 
-    public BufferedImage getTrafficLightImage(Direction direction){
+    /**
+     * @return the number of cars that entered the intersection
+     */
+    public long getPassedVehicles() {
+        return passedVehicles;
+    }
+
+    /**
+     * gets the number of cars waiting to enter the intersection in a given direction
+     * @param direction
+     * @return
+     */
+    public int getWaitingCount(Direction direction){
+        return getEntrance(direction).getWaitingCount();
+    }
+
+    /**
+     * gets the light of the traffic light drawn for a given direction of the intersection
+     * @param direction
+     * @return
+     */
+    public Color getTrafficLight(Direction direction){
         switch (direction){
             case NORTH:
-                if (northEntrance.getLight().equals(Color.GREEN))
-                    return greenLightNorth;
-                if (northEntrance.getLight().equals(Color.RED))
-                    return redLightNorth;
-                return offLightNorth;
+                return northEntrance.getLight();
             case WEST:
-                if (westEntrance.getLight().equals(Color.GREEN))
-                    return greenLightWest;
-                if (westEntrance.getLight().equals(Color.RED))
-                    return redLightWest;
-                return offLightWest;
+                return westEntrance.getLight();
             case SOUTH:
-                if (southEntrance.getLight().equals(Color.GREEN))
-                    return greenLightSouth;
-                if (southEntrance.getLight().equals(Color.RED))
-                    return redLightSouth;
-                return offLightSouth;
+                return southEntrance.getLight();
             case EAST:
-                if (eastEntrance.getLight().equals(Color.GREEN))
-                    return greenLightEast;
-                if (eastEntrance.getLight().equals(Color.RED))
-                    return redLightEast;
-                return offLightEast;
+                return eastEntrance.getLight();
         }
         return null;
     }
 
+    public BufferedImage getTrafficLightImage(Direction direction){
+        return Sprites.trafficLight(direction, getTrafficLight(direction));
+    }
+
 }
@@ -0,0 +1,197 @@
+package game;
+
+/**
+ * a road leading to an intersection as seen by the event engine (see EventSimulation).
+ * the cars driving on the road are kept by the tick they reach the stop line, first car first,
+ * since all the cars of a road drive at the same speed they reach it in the order they entered the road.
+ * the cars that reached the stop line stand in a queue there until they enter the intersection.
+ * the arrival ticks are stored in a primitive ring buffer like the cars of a RoadQueue.
+ */
+class Lane {
+    private static final int INITIAL_CAPACITY = 16;
+    private int intersection;
+    private Direction direction;
+    private int travelTicks;
+    private int capacity;
+    private Lane next;
+    private Lane previous;
+    private long[] arrivals = new long[INITIAL_CAPACITY];
+    private int head = 0;
+    private int size = 0;
+    private int queued = 0;
+    private long nextDeparture = 0;
+    private long scheduled = -1;
+    private boolean blocked = false;
+    private Color light;
+    private ArrivalProcess arrivalProcess;
+
+    /**
+     * constructor.
+     * @param intersection the index of the intersection at the end of the lane
+     * @param direction the direction the cars of the lane drive in
+     * @param light the initial traffic light of the lane
+     * @param travelTicks the ticks a car needs from entering the lane to the stop line
+     * @param capacity the number of cars the lane takes before it blocks the intersection before it
+     */
+    Lane(int intersection, Direction direction, Color light, int travelTicks, int capacity) {
+        this.intersection = intersection;
+        this.direction = direction;
+        this.light = light;
+        this.travelTicks = travelTicks;
+        this.capacity = capacity;
+    }
+
+    int getIntersection() {
+        return intersection;
+    }
+
+    Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the lane after the intersection, null if the cars leave the board
+     */
+    Lane getNext() {
+        return next;
+    }
+
+    /**
+     * @return the lane before the intersection at the start of this lane, null if the cars enter the board
+     */
+    Lane getPrevious() {
+        return previous;
+    }
+
+    /**
+     * connects the lane to the lane after its intersection.
+     * @param next
+     */
+    void setNext(Lane next) {
+        this.next = next;
+        next.previous = this;
+    }
+
+    /**
+     * a car enters the lane and drives towards the stop line.
+     * @param tick
+     * @return the tick the car reaches the stop line
+     */
+    long enter(long tick) {
+        if (size == arrivals.length) {
+            long[] grown = new long[arrivals.length * 2];
+            int tail = arrivals.length - head;
+            System.arraycopy(arrivals, head, grown, 0, tail);
+            System.arraycopy(arrivals, 0, grown, tail, head);
+            arrivals = grown;
+            head = 0;
+        }
+        arrivals[(head + size) & (arrivals.length - 1)] = tick + travelTicks;
+        size++;
+        return tick + travelTicks;
+    }
+
+    /**
+     * @return true if a car is still driving towards the stop line
+     */
+    boolean hasDrivingCars() {
+        return size > 0;
+    }
+
+    /**
+     * @return the tick the first driving car reaches the stop line
+     */
+    long getFirstArrival() {
+        return arrivals[head];
+    }
+
+    /**
+     * the first driving car reached the stop line and stands in the queue.
+     * it can enter the intersection one tick later at the earliest.
+     */
+    void queueFirstArrival() {
+        long arrival = arrivals[head];
+        head = (head + 1) & (arrivals.length - 1);
+        size--;
+        if (queued == 0) {
+            nextDeparture = Math.max(nextDeparture, arrival + 1);
+        }
+        queued++;
+    }
+
+    /**
+     * the first car of the queue enters the intersection.
+     * @param tick
+     * @param headway the ticks until the next car of the queue can follow
+     */
+    void depart(long tick, int headway) {
+        queued--;
+        nextDeparture = tick + headway;
+    }
+
+    /**
+     * @return the number of cars standing at the stop line
+     */
+    int getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return the earliest tick the first car of the queue can enter the intersection
+     */
+    long getNextDeparture() {
+        return nextDeparture;
+    }
+
+    /**
+     * @return true if another car fits on the lane without blocking the intersection before it
+     */
+    boolean hasSpace() {
+        return size + queued < capacity;
+    }
+
+    /**
+     * @return true if the first car of the queue waits for space on the next lane
+     */
+    boolean isBlocked() {
+        return blocked;
+    }
+
+    void setBlocked(boolean blocked) {
+        this.blocked = blocked;
+    }
+
+    /**
+     * @return the tick of the pending update of the lane, -1 if none
+     */
+    long getScheduled() {
+        return scheduled;
+    }
+
+    void setScheduled(long scheduled) {
+        this.scheduled = scheduled;
+    }
+
+    /**
+     * @return the arrivals of cars entering the board on this lane, null if the lane does not start at the edge
+     */
+    ArrivalProcess getArrivalProcess() {
+        return arrivalProcess;
+    }
+
+    void setArrivalProcess(ArrivalProcess arrivalProcess) {
+        this.arrivalProcess = arrivalProcess;
+    }
+
+    boolean isCanPass() {
+        return light.equals(Color.GREEN) || light.equals(Color.OFF);
+    }
+
+    void setLight(Color light) {
+        this.light = light;
+    }
+
+    Color getLight() {
+        return light;
+    }
+}
@@ -0,0 +1,125 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a histogram of non-negative long values with a fixed relative precision, like HdrHistogram:
+ * values below 128 have a bucket each, larger values share a bucket with the values within 1/64 of them.
+ * recording is a few shifts and an array increment, so it can be called on every step of the simulation.
+ * written by a single thread, the counts can be read from any thread (e.g. by JMX) while it records.
+ */
+public class LogHistogram {
+    private static final int PRECISION_BITS = 7;
+    private static final int LINEAR = 1 << PRECISION_BITS;
+    private static final int HALF = LINEAR / 2;
+    private static final int BUCKETS = LINEAR + (64 - PRECISION_BITS) * HALF;
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count = 0;
+    private volatile long sum = 0;
+    private volatile long max = 0;
+
+    /**
+     * records a value. only a single thread may record.
+     * @param value negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int bucket = bucket(value);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * adds the values of another histogram, e.g. to sum up the histograms of several threads.
+     * the other histogram must not be recorded to meanwhile.
+     * @param other
+     */
+    public void add(LogHistogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            long added = other.counts.get(bucket);
+            if (added != 0) {
+                counts.lazySet(bucket, counts.get(bucket) + added);
+            }
+        }
+        count += other.count;
+        sum += other.sum;
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+        return LINEAR + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * @param bucket
+     * @return the largest value recorded in the bucket
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR) / HALF + 1;
+        long top = (bucket - LINEAR) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        long n = count;
+        return n == 0 ? 0 : (double) sum / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value at or below which the given percentage of the values are, within the precision of the buckets.
+     * 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long n = count;
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param scale the value of a unit, e.g. 1000 to show nanoseconds as microseconds
+     * @return the count, mean, median, 90th and 99th percentiles and maximum
+     */
+    public String toString(double scale) {
+        return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f", getCount(), getMean() / scale,
+                getPercentile(50) / scale, getPercentile(90) / scale, getPercentile(99) / scale, getMax() / scale);
+    }
+
+    @Override
+    public String toString() {
+        return toString(1);
+    }
+}
@@ -0,0 +1,160 @@
+package game;
+
+import net.sf.javabdd.BDDDomain;
+import tau.smlab.syntech.jtlv.Env;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * a spectra variable and the positions of its bits in a packed state, least significant bit first.
+ * a packed state has one bit per unprimed BDD variable, in the order of the sorted variable numbers,
+ * the way StateDecoder.key, ControllerCompiler and ControllerExport pack it.
+ * the typed values have an entry for every bit pattern, patterns past the last value of the domain
+ * map to null, -1 or false.
+ */
+class PackedVar {
+    private String name;
+    private int[] positions;
+    private String[] values;
+    private long mask;
+
+    /**
+     * constructor.
+     * @param name
+     * @param positions the bit of every BDD variable of the domain in a packed state, least significant first
+     * @param values the names of the values of the domain
+     */
+    PackedVar(String name, int[] positions, String[] values) {
+        this.name = name;
+        this.positions = positions;
+        this.values = values;
+        for (int position : positions) {
+            mask |= 1L << position;
+        }
+    }
+
+    /**
+     * looks up a variable of the loaded controller.
+     * @param name
+     * @param unprimeVars the unprimed BDD variables of the controller, sorted
+     * @return
+     */
+    static PackedVar of(String name, int[] unprimeVars) {
+        BDDDomain domain = Env.getVar(name).getDomain();
+        int[] vars = domain.vars();
+        int[] positions = new int[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            positions[i] = Arrays.binarySearch(unprimeVars, vars[i]);
+        }
+        String[] values = new String[domain.size().intValue()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Env.stringer.elementName(domain, BigInteger.valueOf(i));
+        }
+        return new PackedVar(name, positions, values);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int[] getPositions() {
+        return positions;
+    }
+
+    String[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the bits of the variable in a packed state
+     */
+    long getMask() {
+        return mask;
+    }
+
+    /**
+     * @return the number of values of the domain
+     */
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * @param state a packed state
+     * @return the index of the value of the variable in the state, may be past the last value
+     */
+    int index(long state) {
+        int index = 0;
+        for (int i = positions.length - 1; i >= 0; i--) {
+            index = (index << 1) | (int) ((state >> positions[i]) & 1);
+        }
+        return index;
+    }
+
+    /**
+     * reads the value from the BDD variables of a state instead of its packed bits,
+     * so it also works for states of more than 64 bits.
+     * @param assignment the value of every BDD variable
+     * @param unprimeVars the unprimed BDD variables of the controller, sorted
+     * @return the index of the value of the variable, may be past the last value
+     */
+    int index(boolean[] assignment, int[] unprimeVars) {
+        int index = 0;
+        for (int i = positions.length - 1; i >= 0; i--) {
+            index = (index << 1) | (assignment[unprimeVars[positions[i]]] ? 1 : 0);
+        }
+        return index;
+    }
+
+    /**
+     * @param state a packed state
+     * @return the name of the value of the variable in the state
+     */
+    String name(long state) {
+        return values[index(state)];
+    }
+
+    /**
+     * @param value
+     * @return the bits of the value in a packed state
+     */
+    long pack(String value) {
+        int index = Arrays.asList(values).indexOf(value);
+        if (index < 0) {
+            throw new IllegalArgumentException(value + " is not a value of " + name);
+        }
+        long packed = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if ((index & (1 << i)) != 0) {
+                packed |= 1L << positions[i];
+            }
+        }
+        return packed;
+    }
+
+    Color[] colorValues() {
+        Color[] colors = new Color[1 << positions.length];
+        for (int i = 0; i < values.length; i++) {
+            colors[i] = Color.valueOf(values[i]);
+        }
+        return colors;
+    }
+
+    int[] intValues() {
+        int[] ints = new int[1 << positions.length];
+        Arrays.fill(ints, -1);
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = Integer.parseInt(values[i]);
+        }
+        return ints;
+    }
+
+    boolean[] booleanValues() {
+        boolean[] booleans = new boolean[1 << positions.length];
+        for (int i = 0; i < values.length; i++) {
+            booleans[i] = Boolean.parseBoolean(values[i]);
+        }
+        return booleans;
+    }
+}
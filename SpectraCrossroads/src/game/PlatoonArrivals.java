@@ -0,0 +1,48 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * cars arrive in platoons, as they do downstream of a traffic light:
+ * the cars of a platoon follow each other HEADWAY ticks apart,
+ * and the platoons are spaced so the mean number of ticks between two cars is the one of UniformArrivals.
+ */
+public class PlatoonArrivals implements ArrivalProcess {
+    /**
+     * the ticks between two cars of a platoon, cars driving 40 pixels apart.
+     */
+    static final int HEADWAY = 20;
+    private SplittableRandom random;
+    private int size;
+    private int min;
+    private int max;
+    private int left = 0;
+
+    /**
+     * constructor.
+     * @param random
+     * @param size the number of cars in a platoon
+     */
+    public PlatoonArrivals(SplittableRandom random, int size) {
+        this.random = random;
+        this.size = size;
+    }
+
+    @Override
+    public long nextArrival(long tick) {
+        if (left > 0) {
+            left--;
+            return tick + HEADWAY;
+        }
+        left = size - 1;
+        long gap = (long) size * (random.nextInt((max + 1) - min) + min) - (long) (size - 1) * HEADWAY;
+        return tick + Math.max(1, gap);
+    }
+
+    @Override
+    public void setInterval(int min, int max) {
+        this.min = min;
+        this.max = max;
+        left = 0;
+    }
+}
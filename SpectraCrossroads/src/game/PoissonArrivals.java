@@ -0,0 +1,50 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * a car arrives in every tick with the same probability, independently of the other ticks,
+ * so the ticks between two cars are geometrically distributed (the discrete Poisson process).
+ * the mean number of ticks between two cars is the middle of the interval.
+ */
+public class PoissonArrivals implements ArrivalProcess {
+    private SplittableRandom random;
+    private double logNoArrival;
+
+    /**
+     * constructor.
+     * @param random
+     */
+    public PoissonArrivals(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public long nextArrival(long tick) {
+        return tick + geometric(random, logNoArrival);
+    }
+
+    @Override
+    public void setInterval(int min, int max) {
+        logNoArrival = logNoArrival((min + max) / 2.0);
+    }
+
+    /**
+     * @param meanInterval the mean number of ticks between two cars
+     * @return the log of the probability that no car arrives in a tick, -infinity if a car arrives in every tick
+     */
+    static double logNoArrival(double meanInterval) {
+        return meanInterval <= 1 ? Double.NEGATIVE_INFINITY : Math.log1p(-1 / meanInterval);
+    }
+
+    /**
+     * draws the number of ticks until the next car.
+     * @param random
+     * @param logNoArrival see logNoArrival
+     * @return at least 1
+     */
+    static long geometric(SplittableRandom random, double logNoArrival) {
+        double ticks = Math.ceil(Math.log(1 - random.nextDouble()) / logNoArrival);
+        return ticks < 1 ? 1 : (long) Math.min(ticks, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,107 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Poisson arrivals (see PoissonArrivals) whose rate follows the hours of a simulated day starting at tick 0,
+ * e.g. to put the controller through the morning and evening peaks.
+ * the rate of every hour is the rate of the interval times the factor of the hour in the profile.
+ * the arrivals are drawn at the rate of the busiest hour and each is kept with the factor of its hour
+ * over the factor of the busiest hour (thinning), so the rate changes exactly at the start of an hour.
+ */
+public class ProfileArrivals implements ArrivalProcess {
+    /**
+     * the ticks of a simulated hour.
+     */
+    static final long HOUR_TICKS = 3600000L / Simulation.TICK_MILLIS;
+    private SplittableRandom random;
+    private double[] factors;
+    private double maxFactor = 0;
+    private double logNoArrival;
+
+    /**
+     * constructor.
+     * @param random
+     * @param factors the factor of every hour of the day, see readProfile
+     */
+    public ProfileArrivals(SplittableRandom random, double[] factors) {
+        this.random = random;
+        this.factors = factors;
+        for (double factor : factors) {
+            maxFactor = Math.max(maxFactor, factor);
+        }
+    }
+
+    @Override
+    public long nextArrival(long tick) {
+        if (maxFactor == 0) {
+            return Long.MAX_VALUE;
+        }
+        long next = tick;
+        do {
+            next += PoissonArrivals.geometric(random, logNoArrival);
+        } while (random.nextDouble() * maxFactor >= factors[(int) (next / HOUR_TICKS % factors.length)]);
+        return next;
+    }
+
+    @Override
+    public void setInterval(int min, int max) {
+        logNoArrival = PoissonArrivals.logNoArrival((min + max) / 2.0 / maxFactor);
+    }
+
+    /**
+     * reads a profile file, one hour per line: hour,factor
+     * e.g. 7,2.5 makes the cars arrive 2.5 times as often as the interval says from 7:00.
+     * the factor of a line holds until the hour of the next line, the last one until the first one of the next day.
+     * empty lines and lines starting with # are skipped.
+     * @param file
+     * @return the factor of every hour of the day
+     * @throws IOException if the file cannot be read or has no hours
+     */
+    public static double[] readProfile(String file) throws IOException {
+        Double[] listed = new Double[24];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] values = line.split("\\s*,\\s*");
+                int hour;
+                double factor;
+                try {
+                    hour = Integer.parseInt(values[0]);
+                    factor = Double.parseDouble(values[1]);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("expected hour,factor but got: " + line);
+                }
+                if (values.length != 2 || hour < 0 || hour >= listed.length || factor < 0) {
+                    throw new IOException("expected hour,factor with an hour of 0..23 and a factor of at least 0 but got: " + line);
+                }
+                listed[hour] = factor;
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new IOException("no hours in arrival profile " + file);
+        }
+        double[] factors = new double[listed.length];
+        int last = listed.length - 1;
+        while (listed[last] == null) {
+            last--;
+        }
+        double factor = listed[last];
+        for (int hour = 0; hour < factors.length; hour++) {
+            if (listed[hour] != null) {
+                factor = listed[hour];
+            }
+            factors[hour] = factor;
+        }
+        return factors;
+    }
+}
@@ -0,0 +1,89 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * a rectangle of intersections of the board with the roads leading to them
+ * and the roads leaving the board from them.
+ * the regions of a board are updated in parallel, each region by a single task.
+ * cars crossing into a neighbouring region wait in the leaving queues of their intersection,
+ * and the region posts a handoff to the arrivals of the neighbour,
+ * which moves the cars once all the regions have finished controlling their cars.
+ */
+class Region {
+    private List<Intersection> intersections = new ArrayList<>();
+    private List<RoadQueue> exits = new ArrayList<>();
+    private List<Handoff> localHandoffs = new ArrayList<>();
+    private List<Handoff> outgoingHandoffs = new ArrayList<>();
+    private ConcurrentLinkedQueue<Handoff> arrivals = new ConcurrentLinkedQueue<>();
+    private VehicleStatistics statistics = new VehicleStatistics();
+
+    List<Intersection> getIntersections() {
+        return intersections;
+    }
+
+    /**
+     * @return the roads leaving the board from the intersections of the region
+     */
+    List<RoadQueue> getExits() {
+        return exits;
+    }
+
+    /**
+     * @return the handoffs to the roads of this region and to the roads leaving the board
+     */
+    List<Handoff> getLocalHandoffs() {
+        return localHandoffs;
+    }
+
+    /**
+     * @return the handoffs to the roads of neighbouring regions
+     */
+    List<Handoff> getOutgoingHandoffs() {
+        return outgoingHandoffs;
+    }
+
+    /**
+     * @return the handoffs posted to this region by its neighbours during the current tick
+     */
+    ConcurrentLinkedQueue<Handoff> getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * @return the statistics of the cars of the region, only changed by the task of the region
+     */
+    VehicleStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * the cars leaving an intersection in one direction, towards the exit in that direction.
+     * created once for every road, so posting a handoff does not create one.
+     */
+    static class Handoff {
+        private Intersection from;
+        private Direction direction;
+        private Region target;
+
+        Handoff(Intersection from, Direction direction, Region target) {
+            this.from = from;
+            this.direction = direction;
+            this.target = target;
+        }
+
+        Region getTarget() {
+            return target;
+        }
+
+        boolean hasCars() {
+            return from.getLeaving(direction).size() > 0;
+        }
+
+        void handOver() {
+            from.handOverLeavingCars(direction);
+        }
+    }
+}
@@ -1,23 +1,244 @@
 package game;
 
 
-import java.util.LinkedList;
-
 /**
- * holds a queue of cars and the traffic light state for that queue
- *
+ * holds a queue of cars and the traffic light state for that queue.
+ * all the cars of a queue drive in the same direction.
+ * the cars are stored column by column in primitive ring buffers, first car (closest to the intersection) first,
+ * so moving the cars of a queue allocates nothing, the car in front of a car is an index lookup
+ * and a car entering the intersection is removed from the head without moving the others.
+ * the capacity is a power of 2 and doubles when the queue is full.
+ * every car also carries the tick it entered the board and the tick it joined the queue of its current road,
+ * for the statistics of the run (see VehicleStatistics).
  */
 public class RoadQueue {
-    private LinkedList<Vehicle> queue = new LinkedList<>();
+    private static final int INITIAL_CAPACITY = 16;
+    private Direction direction;
+    private int head = 0;
+    private int size = 0;
+    private int mask = INITIAL_CAPACITY - 1;
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] delay = new int[INITIAL_CAPACITY];
+    private boolean[] waiting = new boolean[INITIAL_CAPACITY];
+    private long[] entered = new long[INITIAL_CAPACITY];
+    private long[] stopped = new long[INITIAL_CAPACITY];
+    private int waitingCount = 0;
+    private int spaceMark = Integer.MAX_VALUE;
 
     private Color light;
 
-    public RoadQueue(Color light) {
+    public RoadQueue(Color light, Direction direction) {
         this.light = light;
+        this.direction = direction;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param car the place of the car in the queue, 0 is the first car
+     * @return
+     */
+    public int getX(int car) {
+        return x[(head + car) & mask];
+    }
+
+    /**
+     * @param car the place of the car in the queue, 0 is the first car
+     * @return
+     */
+    public int getY(int car) {
+        return y[(head + car) & mask];
+    }
+
+    /**
+     * the distance a car has driven in the direction of the queue:
+     * x for cars driving east, -x for west, y for south and -y for north.
+     * @param car the place of the car in the queue, 0 is the first car
+     * @return
+     */
+    public int getProgress(int car) {
+        switch (direction) {
+            case EAST:
+                return getX(car);
+            case WEST:
+                return -getX(car);
+            case SOUTH:
+                return getY(car);
+            case NORTH:
+                return -getY(car);
+        }
+        return 0;
+    }
+
+    /**
+     * remembers how far back the queue can reach, as a progress no car of the queue will ever stop behind.
+     * set at the end of every tick for the cars that want to join the queue during the next tick.
+     * @param spaceMark
+     */
+    void setSpaceMark(int spaceMark) {
+        this.spaceMark = spaceMark;
+    }
+
+    /**
+     * @return the last space mark, the largest value if the queue is never marked
+     */
+    int getSpaceMark() {
+        return spaceMark;
+    }
+
+    /**
+     * adds a car entering the board at the end of the queue.
+     * @param x
+     * @param y
+     * @param tick
+     */
+    void add(int x, int y, long tick) {
+        add(x, y, -1, tick);
+    }
+
+    private void add(int x, int y, int delay, long entered) {
+        if (size == this.x.length) {
+            grow();
+        }
+        int slot = (head + size) & mask;
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.delay[slot] = delay;
+        this.waiting[slot] = false;
+        this.entered[slot] = entered;
+        this.stopped[slot] = -1;
+        size++;
+    }
+
+    /**
+     * doubles the capacity and moves the first car to the start of the arrays.
+     */
+    private void grow() {
+        int capacity = x.length * 2;
+        x = unwrap(x, new int[capacity]);
+        y = unwrap(y, new int[capacity]);
+        delay = unwrap(delay, new int[capacity]);
+        entered = unwrap(entered, new long[capacity]);
+        stopped = unwrap(stopped, new long[capacity]);
+        boolean[] grownWaiting = new boolean[capacity];
+        int tail = waiting.length - head;
+        System.arraycopy(waiting, head, grownWaiting, 0, tail);
+        System.arraycopy(waiting, 0, grownWaiting, tail, head);
+        waiting = grownWaiting;
+        head = 0;
+        mask = capacity - 1;
+    }
+
+    private int[] unwrap(int[] ring, int[] grown) {
+        int tail = ring.length - head;
+        System.arraycopy(ring, head, grown, 0, tail);
+        System.arraycopy(ring, 0, grown, tail, head);
+        return grown;
+    }
+
+    private long[] unwrap(long[] ring, long[] grown) {
+        int tail = ring.length - head;
+        System.arraycopy(ring, head, grown, 0, tail);
+        System.arraycopy(ring, 0, grown, tail, head);
+        return grown;
+    }
+
+    /**
+     * removes the first car of the queue.
+     */
+    void removeFirst() {
+        if (waiting[head]) {
+            waitingCount--;
+        }
+        head = (head + 1) & mask;
+        size--;
+    }
+
+    /**
+     * moves the first car of the queue to the end of another queue, keeping its position, delay and entry tick.
+     * @param next
+     */
+    void moveFirstTo(RoadQueue next) {
+        next.add(x[head], y[head], delay[head], entered[head]);
+        removeFirst();
+    }
+
+    /**
+     * @param car the place of the car in the queue, 0 is the first car
+     * @return the tick the car entered the board
+     */
+    long getEntered(int car) {
+        return entered[(head + car) & mask];
+    }
+
+    /**
+     * @param car the place of the car in the queue, 0 is the first car
+     * @return the tick the car was first marked as waiting in this queue, -1 if it was not
+     */
+    long getStopped(int car) {
+        return stopped[(head + car) & mask];
+    }
+
+    /**
+     * drives a car if its delay counter is below 0
+     * the delays allows for a more realistic cars movement.
+     * the delay counter is reset every time a car cannot move
+     * and is decremented if it didnt move until it starts moving.
+     * @param car the place of the car in the queue, 0 is the first car
+     * @param state
+     */
+    void drive(int car, boolean state) {
+        int slot = (head + car) & mask;
+        delay[slot] = state ? delay[slot] - 1 : 5;
+        if (delay[slot] < 0) {
+            switch (direction) {
+                case EAST:
+                    x[slot] += 2;
+                    break;
+                case WEST:
+                    x[slot] -= 2;
+                    break;
+                case NORTH:
+                    y[slot] -= 2;
+                    break;
+                case SOUTH:
+                    y[slot] += 2;
+                    break;
+            }
+        }
+    }
+
+    boolean isWaiting(int car) {
+        return waiting[(head + car) & mask];
+    }
+
+    /**
+     * marks a car as waiting, it stays waiting until it leaves the queue.
+     * marking a car that is already waiting changes nothing.
+     * @param car
+     * @param tick
+     */
+    void setWaiting(int car, long tick) {
+        int slot = (head + car) & mask;
+        if (!waiting[slot]) {
+            waiting[slot] = true;
+            stopped[slot] = tick;
+            waitingCount++;
+        }
     }
 
-    public LinkedList<Vehicle> getQueue() {
-        return queue;
+    /**
+     * @return the number of cars in the queue marked as waiting
+     */
+    int getWaitingCount() {
+        return waitingCount;
     }
 
     public boolean isCanPass() {
@@ -0,0 +1,84 @@
+package game;
+
+/**
+ * statistics of a single simulation run: arrivals, throughput and queue lengths.
+ * the waiting time is counted in vehicle-ticks, a car that waits 10 ticks adds 10.
+ */
+public class RunStatistics {
+    private long ticks = 0;
+    private long arrivedVehicles = 0;
+    private long passedVehicles = 0;
+    private long waitingVehicleTicks = 0;
+    private int maxWaiting = 0;
+
+    /**
+     * records the state of the board after a tick.
+     * @param gameBoard
+     */
+    void recordTick(GameBoard gameBoard) {
+        recordTicks(1, gameBoard.getWaitingCount(), gameBoard.getArrivedVehicles(), gameBoard.getPassedVehicles());
+    }
+
+    /**
+     * records a stretch of ticks in which the number of waiting cars did not change.
+     * @param count the number of ticks, nothing is recorded if 0
+     * @param waiting the number of cars waiting during these ticks
+     * @param arrivedVehicles the number of cars that entered the board so far
+     * @param passedVehicles the number of times cars entered an intersection so far
+     */
+    void recordTicks(long count, int waiting, long arrivedVehicles, long passedVehicles) {
+        if (count == 0) {
+            return;
+        }
+        ticks += count;
+        waitingVehicleTicks += waiting * count;
+        maxWaiting = Math.max(maxWaiting, waiting);
+        this.arrivedVehicles = arrivedVehicles;
+        this.passedVehicles = passedVehicles;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getArrivedVehicles() {
+        return arrivedVehicles;
+    }
+
+    public long getPassedVehicles() {
+        return passedVehicles;
+    }
+
+    /**
+     * @return the number of cars that passed the intersection per simulated minute
+     */
+    public double getThroughputPerMinute() {
+        double minutes = ticks * Simulation.TICK_MILLIS / 60000.0;
+        return minutes == 0 ? 0 : passedVehicles / minutes;
+    }
+
+    /**
+     * @return the average number of cars waiting at the intersection
+     */
+    public double getMeanWaiting() {
+        return ticks == 0 ? 0 : (double) waitingVehicleTicks / ticks;
+    }
+
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    /**
+     * @return the average number of ticks a car that passed the intersection spent waiting
+     */
+    public double getMeanWaitTicks() {
+        return passedVehicles == 0 ? 0 : (double) waitingVehicleTicks / passedVehicles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ticks, %d arrived, %d passed (%.1f/min), mean queue %.2f, max queue %d, mean wait %.1f ticks",
+                ticks, arrivedVehicles, passedVehicles, getThroughputPerMinute(), getMeanWaiting(), maxWaiting,
+                getMeanWaitTicks());
+    }
+}
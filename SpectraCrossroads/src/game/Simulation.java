@@ -0,0 +1,306 @@
+package game;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * the simulation engine: a game board whose traffic lights are driven by the spectra controller,
+ * one controller instance per intersection.
+ * has no notion of time or UI, every call to step() advances the simulation by one tick,
+ * so it runs as fast as the CPU allows unless the caller paces it.
+ * all randomness (car arrivals and the choices of every controller) is split from the seed of the config,
+ * so a run can be replayed exactly from its seed.
+ * if the config names a telemetry file every tick is recorded to it, see TelemetryWriter.
+ * if the config asks for metrics the ticks and controller steps are timed, see SimulationMetrics.
+ */
+public class Simulation implements AutoCloseable {
+    /**
+     * the simulated time of a tick, which is also the pace of the interactive game.
+     */
+    public static final int TICK_MILLIS = 30;
+    private GameBoard gameBoard;
+    private TrafficController[] controllers;
+    private int controllerInterval;
+    private long tick = 0;
+    private RunStatistics statistics = new RunStatistics();
+    private volatile BoardFrame frame;
+    private TelemetryWriter telemetry;
+    private SimulationMetrics metrics;
+    private SystemState[] states;
+    private int[] inputFlags;
+    private int[] waiting = new int[Direction.values().length];
+
+    /**
+     * constructor.
+     * sets up the game board and loads the controllers as specified in the config
+     * @param config
+     * @throws IOException
+     */
+    public Simulation(SimulationConfig config) throws IOException {
+        this(config, controllerFactory(config));
+    }
+
+    /**
+     * constructor.
+     * sets up the game board as specified in the config, with a controller from the given factory for every intersection.
+     * @param config
+     * @param controllerFactory
+     * @throws IOException
+     */
+    public Simulation(SimulationConfig config, ControllerFactory controllerFactory) throws IOException {
+        SplittableRandom random = new SplittableRandom(config.getSeed());
+        gameBoard = new GameBoard(random.split(), arrivalFactory(config), config.getGridColumns(), config.getGridRows(),
+                config.getBlockWidth(), config.getBlockHeight());
+        gameBoard.setRegions(config.getRegionColumns(), config.getRegionRows(), config.getRegionThreads());
+        gameBoard.setVerticalFrequency(config.getVerticalMin(), config.getVerticalMax());
+        gameBoard.setHorizontalFrequency(config.getHorizontalMin(), config.getHorizontalMax());
+        controllerInterval = config.getControllerInterval();
+        controllers = new TrafficController[gameBoard.getIntersectionCount()];
+        for (int i = 0; i < controllers.length; i++) {
+            controllers[i] = controllerFactory.create(random.split());
+        }
+        states = new SystemState[controllers.length];
+        inputFlags = new int[controllers.length];
+        if (config.getTelemetry() != null) {
+            telemetry = new TelemetryWriter(config.getTelemetry(), controllers.length);
+        }
+        if (config.isMetrics()) {
+            metrics = new SimulationMetrics(config.getSeed(), config.getMetricsInterval());
+            for (TrafficController controller : controllers) {
+                if (controller instanceof SpectraController) {
+                    ((SpectraController) controller).setMetrics(metrics);
+                }
+            }
+        }
+    }
+
+    /**
+     * the controller specified in the config:
+     * a compiled controller table or a controller snapshot if one is given,
+     * the exported or the symbolic controller otherwise.
+     * a table or a snapshot is loaded once and shared by the controllers of all the intersections.
+     * the symbolic controllers share the synthesized controller and a single successor cache,
+     * which random walks do not use.
+     * @param config
+     * @return
+     * @throws IOException if the symbolic controller cannot be loaded
+     */
+    static ControllerFactory controllerFactory(SimulationConfig config) throws IOException {
+        if (config.getControllerTable() != null) {
+            CompiledController table = CompiledController.load(config.getControllerTable(),
+                    new SplittableRandom(config.getSeed()));
+            return table::fork;
+        }
+        if (config.getControllerSnapshot() != null) {
+            ControllerExport export = ControllerExport.load(config.getControllerSnapshot());
+            return random -> new ExportedController(export, random);
+        }
+        if (config.isControllerExport()) {
+            return random -> new ExportedController(ControllerExport.of(config.getControllerPath()), random);
+        }
+        SpectraStrategy strategy = SpectraStrategy.of(config.getControllerPath());
+        SuccessorCache cache = config.isRandomWalk() ? null : strategy.newCache(config.getControllerCache());
+        return random -> new SpectraController(strategy, cache, config.isRandomWalk(), random);
+    }
+
+    /**
+     * the arrivals specified in the config.
+     * a profile or a trace is read once and shared by all the road ends.
+     * @param config
+     * @return
+     * @throws IOException if the profile cannot be read
+     */
+    static ArrivalFactory arrivalFactory(SimulationConfig config) throws IOException {
+        switch (config.getArrivals()) {
+            case "poisson":
+                return (random, direction, road) -> new PoissonArrivals(random);
+            case "platoon":
+                return (random, direction, road) -> new PlatoonArrivals(random, config.getPlatoonSize());
+            case "profile":
+                if (config.getArrivalProfile() == null) {
+                    throw new IllegalArgumentException("profile arrivals need an arrival-profile");
+                }
+                double[] factors = ProfileArrivals.readProfile(config.getArrivalProfile());
+                return (random, direction, road) -> new ProfileArrivals(random, factors);
+            case "trace":
+                if (config.getArrivalTrace() == null) {
+                    throw new IllegalArgumentException("trace arrivals need an arrival-trace");
+                }
+                TraceArrivals.Trace trace = new TraceArrivals.Trace(config.getArrivalTrace());
+                return (random, direction, road) -> new TraceArrivals(trace, direction, road);
+            default:
+                return (random, direction, road) -> new UniformArrivals(random);
+        }
+    }
+
+    /**
+     * advances the simulation by one tick:
+     * controls the traffic lights by the spectra synthesized controller in the specified interval
+     * and updates the game board.
+     */
+    public void step() {
+        if (metrics != null) {
+            measuredStep();
+            return;
+        }
+        boolean stepped = tick % controllerInterval == 0;
+        if (stepped) {
+            updateLights();
+        }
+        gameBoard.updateGameBoard();
+        statistics.recordTick(gameBoard);
+        if (telemetry != null) {
+            recordTelemetry(stepped);
+        }
+        tick++;
+    }
+
+    /**
+     * step() with the tick, every controller step and the board update timed.
+     * kept apart so a run without metrics does not pay for reading the clock.
+     */
+    private void measuredStep() {
+        long start = System.nanoTime();
+        boolean stepped = tick % controllerInterval == 0;
+        if (stepped) {
+            for (int i = 0; i < controllers.length; i++) {
+                long stepStart = System.nanoTime();
+                updateLights(i, gameBoard.getIntersection(i), controllers[i]);
+                metrics.recordControllerStep(System.nanoTime() - stepStart);
+            }
+        }
+        long updateStart = System.nanoTime();
+        gameBoard.updateGameBoard();
+        metrics.recordBoardUpdate(System.nanoTime() - updateStart);
+        statistics.recordTick(gameBoard);
+        if (telemetry != null) {
+            recordTelemetry(stepped);
+        }
+        metrics.recordTick(System.nanoTime() - start, gameBoard.getVehicleCount());
+        tick++;
+    }
+
+    /**
+     * records the state of every intersection after a tick.
+     * @param stepped were the controllers stepped in this tick
+     */
+    private void recordTelemetry(boolean stepped) {
+        for (int i = 0; i < controllers.length; i++) {
+            Intersection intersection = gameBoard.getIntersection(i);
+            for (Direction direction : Direction.values()) {
+                waiting[direction.ordinal()] = intersection.getWaitingCount(direction);
+            }
+            telemetry.record(tick, i, intersection.getPassedVehicles(), waiting, states[i],
+                    stepped ? inputFlags[i] | TelemetryWriter.FLAG_STEPPED : inputFlags[i]);
+        }
+    }
+
+    /**
+     * sets environment state of every intersection based on the cars in the game board,
+     * and sets its traffic lights to the state selected by its controller.
+     * calculates number of waiting cars in each road as the sum of waiting cars on both ways.
+     */
+    private void updateLights() {
+        for (int i = 0; i < controllers.length; i++) {
+            updateLights(i, gameBoard.getIntersection(i), controllers[i]);
+        }
+    }
+
+    private void updateLights(int index, Intersection intersection, TrafficController controller) {
+        int verticalWaiting = intersection.getWaitingCount(Direction.SOUTH)
+                + intersection.getWaitingCount(Direction.NORTH);
+        int horizontalWaiting = intersection.getWaitingCount(Direction.WEST)
+                + intersection.getWaitingCount(Direction.EAST);
+        boolean verticalPassing = gameBoard.isVerticalPassing(intersection);
+        boolean horizontalPassing = gameBoard.isHorizontalPassing(intersection);
+        SystemState systemState = controller.step(verticalWaiting, horizontalWaiting, verticalPassing, horizontalPassing);
+        controlLightsWithSpectra(intersection, systemState);
+        states[index] = systemState;
+        inputFlags[index] = (verticalPassing ? TelemetryWriter.FLAG_VERTICAL_CROSSING : 0)
+                | (horizontalPassing ? TelemetryWriter.FLAG_HORIZONTAL_CROSSING : 0);
+    }
+
+    /**
+     * controls the traffic lights of an intersection according to the selected system state.
+     * @param intersection
+     * @param systemState
+     */
+    private void controlLightsWithSpectra(Intersection intersection, SystemState systemState) {
+        intersection.getEntrance(Direction.NORTH).setLight(systemState.getVerticalLight());
+        intersection.getEntrance(Direction.SOUTH).setLight(systemState.getVerticalLight());
+        intersection.getEntrance(Direction.EAST).setLight(systemState.getHorizontalLight());
+        intersection.getEntrance(Direction.WEST).setLight(systemState.getHorizontalLight());
+    }
+
+    /**
+     * publishes a snapshot of the current state of the board for drawing.
+     * called by the thread that steps the simulation; frames are only taken when a UI asks for them,
+     * so a headless run pays nothing for drawing.
+     */
+    public void publishFrame() {
+        frame = gameBoard.snapshot(tick);
+    }
+
+    /**
+     * @return the last published frame, or null if no frame was published yet.
+     * safe to call from any thread.
+     */
+    public BoardFrame getFrame() {
+        return frame;
+    }
+
+    public GameBoard getGameBoard() {
+        return gameBoard;
+    }
+
+    /**
+     * @param intersection the index of the intersection on the board
+     * @return the controller of the intersection
+     */
+    public TrafficController getController(int intersection) {
+        return controllers[intersection];
+    }
+
+    public RunStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the metrics of the run, null if the config did not ask for them
+     */
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public void setControllerInterval(int controllerInterval) {
+        this.controllerInterval = controllerInterval;
+    }
+
+    public int getControllerInterval() {
+        return controllerInterval;
+    }
+
+    /**
+     * writes the remaining telemetry and closes its file, unregisters the metrics
+     * and stops the threads and closes the arrivals of the board.
+     * the metrics and the board are released even if writing the telemetry failed.
+     * @throws IOException if writing the telemetry failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (telemetry != null) {
+                telemetry.close();
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.close();
+            }
+            gameBoard.close();
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package game;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+/**
+ * the parameters of a simulation run.
+ * read from a properties file and/or command line arguments of the form key=value (or --key=value),
+ * e.g. --config=run.properties --ticks=1000000 --vertical-max=75
+ * arguments override values from the properties file.
+ * a run without a seed parameter gets a random seed, which is reported so the run can be replayed.
+ * a controller-table parameter runs a table compiled by ControllerCompiler instead of the BDD controller.
+ * a table compiled for a maxCars below the CarsCount bound of the spec saturates the waiting counts it is given,
+ * so its runs show a different controller from the BDD controller, with shorter queues and waits.
+ * controller-choice=walk lets the BDD controller pick its next state by a random walk down the BDD
+ * instead of uniformly among all the possible next states (uniform, the default), see SpectraController.
+ * the walks are not cached, so controller-cache does not apply to them.
+ * controller-export=true runs the BDD controller exported from the global BDD state into plain arrays,
+ * which can be shared by threads, see ControllerExport.
+ * a controller-snapshot parameter runs the exported controller from a snapshot file written by ControllerExport,
+ * which loads in milliseconds.
+ * grid-columns and grid-rows set the number of intersections on the board,
+ * block-width and block-height the size in tiles of the block around each intersection.
+ * region-columns and region-rows split the board into regions that are updated in parallel by region-threads threads.
+ * arrivals picks how cars enter the board at the ends of the roads:
+ * uniform (the default), poisson, platoon (of platoon-size cars), profile (by the hours in arrival-profile)
+ * or trace (replaying arrival-trace), see the implementations of ArrivalProcess.
+ * telemetry names a file the run records its lights, queues and controller states to, see TelemetryWriter.
+ * metrics=true measures the latency of the ticks and controller steps (see SimulationMetrics),
+ * printing a summary every metrics-interval seconds (0 for never).
+ * engine=event runs the discrete-event engine (see EventSimulation) instead of the tick engine.
+ * runs, threads and scenarios are only used by BatchRunner.
+ */
+public class SimulationConfig {
+    private String controllerPath = "out/";
+    private String controllerTable = null;
+    private int controllerCache = SpectraController.DEFAULT_CACHE_CAPACITY;
+    private boolean randomWalk = false;
+    private boolean controllerExport = false;
+    private String controllerSnapshot = null;
+    private long ticks = 100000;
+    private int verticalMin = 30;
+    private int verticalMax = 75;
+    private int horizontalMin = 30;
+    private int horizontalMax = 75;
+    private int controllerInterval = 10;
+    private boolean eventEngine = false;
+    private String arrivals = "uniform";
+    private int platoonSize = 5;
+    private String arrivalProfile = null;
+    private String arrivalTrace = null;
+    private String telemetry = null;
+    private boolean metrics = false;
+    private int metricsInterval = 10;
+    private int gridColumns = 1;
+    private int gridRows = 1;
+    private int blockWidth = 20;
+    private int blockHeight = 15;
+    private int regionColumns = 1;
+    private int regionRows = 1;
+    private int regionThreads = Runtime.getRuntime().availableProcessors();
+    private long seed = new SplittableRandom().nextLong();
+    private int runs = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String scenarios = null;
+
+    public SimulationConfig() {
+    }
+
+    /**
+     * creates a config from command line arguments.
+     * a "config" argument names a properties file that is read first.
+     * @param args
+     * @return the parsed config
+     * @throws IOException if the properties file cannot be read
+     */
+    public static SimulationConfig fromArgs(String[] args) throws IOException {
+        Properties properties = new Properties();
+        for (String arg : args) {
+            String[] keyValue = splitArg(arg);
+            if ("config".equals(keyValue[0])) {
+                try (InputStream in = new FileInputStream(keyValue[1])) {
+                    properties.load(in);
+                }
+            }
+        }
+        for (String arg : args) {
+            String[] keyValue = splitArg(arg);
+            if (!"config".equals(keyValue[0])) {
+                properties.setProperty(keyValue[0], keyValue[1]);
+            }
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * creates a config from properties, keeping the defaults for missing keys.
+     * @param properties
+     * @return the parsed config
+     */
+    public static SimulationConfig fromProperties(Properties properties) {
+        SimulationConfig config = new SimulationConfig();
+        for (String key : properties.stringPropertyNames()) {
+            config.set(key, properties.getProperty(key).trim());
+        }
+        config.checkIntervals();
+        return config;
+    }
+
+    /**
+     * checks that the ranges of the ticks between two cars are not empty,
+     * once both of their ends are set.
+     * @throws IllegalArgumentException if a minimum is above its maximum
+     */
+    void checkIntervals() {
+        if (verticalMin > verticalMax) {
+            throw new IllegalArgumentException("vertical-min " + verticalMin
+                    + " must not be above vertical-max " + verticalMax);
+        }
+        if (horizontalMin > horizontalMax) {
+            throw new IllegalArgumentException("horizontal-min " + horizontalMin
+                    + " must not be above horizontal-max " + horizontalMax);
+        }
+    }
+
+    private static String[] splitArg(String arg) {
+        String stripped = arg.startsWith("--") ? arg.substring(2) : arg;
+        int separator = stripped.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("expected key=value but got: " + arg);
+        }
+        return new String[]{stripped.substring(0, separator), stripped.substring(separator + 1)};
+    }
+
+    /**
+     * @return a copy of this config that can be changed independently
+     */
+    SimulationConfig copy() {
+        SimulationConfig copy = new SimulationConfig();
+        copy.controllerPath = controllerPath;
+        copy.controllerTable = controllerTable;
+        copy.controllerCache = controllerCache;
+        copy.randomWalk = randomWalk;
+        copy.controllerExport = controllerExport;
+        copy.controllerSnapshot = controllerSnapshot;
+        copy.ticks = ticks;
+        copy.verticalMin = verticalMin;
+        copy.verticalMax = verticalMax;
+        copy.horizontalMin = horizontalMin;
+        copy.horizontalMax = horizontalMax;
+        copy.controllerInterval = controllerInterval;
+        copy.eventEngine = eventEngine;
+        copy.arrivals = arrivals;
+        copy.platoonSize = platoonSize;
+        copy.arrivalProfile = arrivalProfile;
+        copy.arrivalTrace = arrivalTrace;
+        copy.telemetry = telemetry;
+        copy.metrics = metrics;
+        copy.metricsInterval = metricsInterval;
+        copy.gridColumns = gridColumns;
+        copy.gridRows = gridRows;
+        copy.blockWidth = blockWidth;
+        copy.blockHeight = blockHeight;
+        copy.regionColumns = regionColumns;
+        copy.regionRows = regionRows;
+        copy.regionThreads = regionThreads;
+        copy.seed = seed;
+        copy.runs = runs;
+        copy.threads = threads;
+        copy.scenarios = scenarios;
+        return copy;
+    }
+
+    void set(String key, String value) {
+        switch (key) {
+            case "controller":
+                controllerPath = value;
+                break;
+            case "controller-table":
+                controllerTable = value;
+                break;
+            case "controller-cache":
+                controllerCache = parseAtLeast(key, value, 0);
+                break;
+            case "controller-choice":
+                if (!"uniform".equals(value) && !"walk".equals(value)) {
+                    throw new IllegalArgumentException("controller-choice must be uniform or walk but got: " + value);
+                }
+                randomWalk = "walk".equals(value);
+                break;
+            case "controller-export":
+                if (!"true".equals(value) && !"false".equals(value)) {
+                    throw new IllegalArgumentException("controller-export must be true or false but got: " + value);
+                }
+                controllerExport = "true".equals(value);
+                break;
+            case "controller-snapshot":
+                controllerSnapshot = value;
+                break;
+            case "ticks":
+                ticks = parseAtLeast(key, value, 0L);
+                break;
+            case "vertical-min":
+                verticalMin = parseAtLeast(key, value, 1);
+                break;
+            case "vertical-max":
+                verticalMax = parseAtLeast(key, value, 1);
+                break;
+            case "horizontal-min":
+                horizontalMin = parseAtLeast(key, value, 1);
+                break;
+            case "horizontal-max":
+                horizontalMax = parseAtLeast(key, value, 1);
+                break;
+            case "controller-interval":
+                controllerInterval = parseAtLeast(key, value, 1);
+                break;
+            case "engine":
+                if (!"tick".equals(value) && !"event".equals(value)) {
+                    throw new IllegalArgumentException("engine must be tick or event but got: " + value);
+                }
+                eventEngine = "event".equals(value);
+                break;
+            case "arrivals":
+                if (!Arrays.asList("uniform", "poisson", "platoon", "profile", "trace").contains(value)) {
+                    throw new IllegalArgumentException("arrivals must be uniform, poisson, platoon, profile or trace but got: " + value);
+                }
+                arrivals = value;
+                break;
+            case "platoon-size":
+                platoonSize = parseAtLeast(key, value, 1);
+                break;
+            case "arrival-profile":
+                arrivalProfile = value;
+                break;
+            case "arrival-trace":
+                arrivalTrace = value;
+                break;
+            case "telemetry":
+                telemetry = value;
+                break;
+            case "metrics":
+                if (!"true".equals(value) && !"false".equals(value)) {
+                    throw new IllegalArgumentException("metrics must be true or false but got: " + value);
+                }
+                metrics = "true".equals(value);
+                break;
+            case "metrics-interval":
+                metricsInterval = parseAtLeast(key, value, 0);
+                break;
+            case "grid-columns":
+                gridColumns = parseAtLeast(key, value, 1);
+                break;
+            case "grid-rows":
+                gridRows = parseAtLeast(key, value, 1);
+                break;
+            case "block-width":
+                blockWidth = parseAtLeast(key, value, 3);
+                break;
+            case "block-height":
+                blockHeight = parseAtLeast(key, value, 3);
+                break;
+            case "region-columns":
+                regionColumns = parseAtLeast(key, value, 1);
+                break;
+            case "region-rows":
+                regionRows = parseAtLeast(key, value, 1);
+                break;
+            case "region-threads":
+                regionThreads = parseAtLeast(key, value, 1);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "runs":
+                runs = parseAtLeast(key, value, 1);
+                break;
+            case "threads":
+                threads = parseAtLeast(key, value, 1);
+                break;
+            case "scenarios":
+                scenarios = value;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown simulation parameter: " + key);
+        }
+    }
+
+    private static int parseAtLeast(String key, String value, int min) {
+        int parsed = Integer.parseInt(value);
+        if (parsed < min) {
+            throw new IllegalArgumentException(key + " must be at least " + min + " but got: " + value);
+        }
+        return parsed;
+    }
+
+    private static long parseAtLeast(String key, String value, long min) {
+        long parsed = Long.parseLong(value);
+        if (parsed < min) {
+            throw new IllegalArgumentException(key + " must be at least " + min + " but got: " + value);
+        }
+        return parsed;
+    }
+
+    public String getControllerPath() {
+        return controllerPath;
+    }
+
+    public String getControllerTable() {
+        return controllerTable;
+    }
+
+    public int getControllerCache() {
+        return controllerCache;
+    }
+
+    /**
+     * @return true if the BDD controller picks its next state by a random walk, false to pick uniformly
+     */
+    public boolean isRandomWalk() {
+        return randomWalk;
+    }
+
+    /**
+     * @return true if the BDD controller runs exported into arrays, false to run it on the global BDD state
+     */
+    public boolean isControllerExport() {
+        return controllerExport;
+    }
+
+    public String getControllerSnapshot() {
+        return controllerSnapshot;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public int getVerticalMin() {
+        return verticalMin;
+    }
+
+    public int getVerticalMax() {
+        return verticalMax;
+    }
+
+    public int getHorizontalMin() {
+        return horizontalMin;
+    }
+
+    public int getHorizontalMax() {
+        return horizontalMax;
+    }
+
+    public int getControllerInterval() {
+        return controllerInterval;
+    }
+
+    /**
+     * @return true if the run uses the discrete-event engine
+     */
+    public boolean isEventEngine() {
+        return eventEngine;
+    }
+
+    public String getArrivals() {
+        return arrivals;
+    }
+
+    public int getPlatoonSize() {
+        return platoonSize;
+    }
+
+    public String getArrivalProfile() {
+        return arrivalProfile;
+    }
+
+    public String getArrivalTrace() {
+        return arrivalTrace;
+    }
+
+    /**
+     * @return the file to write the telemetry of the run to, null for none
+     */
+    public String getTelemetry() {
+        return telemetry;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the seconds between the printed summaries of the metrics, 0 for none
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
+    public int getGridColumns() {
+        return gridColumns;
+    }
+
+    public int getGridRows() {
+        return gridRows;
+    }
+
+    public int getBlockWidth() {
+        return blockWidth;
+    }
+
+    public int getBlockHeight() {
+        return blockHeight;
+    }
+
+    public int getRegionColumns() {
+        return regionColumns;
+    }
+
+    public int getRegionRows() {
+        return regionRows;
+    }
+
+    public int getRegionThreads() {
+        return regionThreads;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public String getScenarios() {
+        return scenarios;
+    }
+}
@@ -0,0 +1,302 @@
+package game;
+
+import net.sf.javabdd.BDDFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * measures the hot path of a simulation: the time of every tick, controller step, board update and paint,
+ * the number of cars on the board per tick, and for the BDD controller the size of every computed successor set,
+ * the number of BDD nodes, the size of the node table, the garbage collections of the BDD package
+ * and the successor cache hits.
+ * the BDD package is read again whenever the metrics are read, so its numbers stay current
+ * while the successor cache answers the steps without touching it.
+ * the times and sizes are kept in LogHistograms, so percentiles come at a fixed cost however long the run.
+ * registered as an MBean (game:type=SimulationMetrics,seed=s,id=n) and optionally printed every few seconds.
+ * the id is unique in the JVM, so the runs of a batch never collide, and the seed tells which run it is.
+ * the MBean and the printing thread live until close.
+ * each histogram is recorded by a single thread: the simulation thread, or the UI thread for the paint times.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean, AutoCloseable {
+    private static final double MICROS = 1000;
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private LogHistogram tickNanos = new LogHistogram();
+    private LogHistogram controllerStepNanos = new LogHistogram();
+    private LogHistogram boardUpdateNanos = new LogHistogram();
+    private LogHistogram paintNanos = new LogHistogram();
+    private LogHistogram vehicles = new LogHistogram();
+    private LogHistogram successors = new LogHistogram();
+    private volatile long bddNodes = 0;
+    private volatile long maxBddNodes = 0;
+    private volatile long bddTableSize = 0;
+    private volatile long bddGcCount = 0;
+    private volatile long bddGcMillis = 0;
+    private volatile BDDFactory factory;
+    private List<SuccessorCache> caches = new ArrayList<>();
+    private ObjectName name;
+    private ScheduledExecutorService dump;
+
+    /**
+     * constructor.
+     * registers the metrics with the platform MBean server.
+     * @param seed the seed of the run
+     * @param dumpSeconds the interval to print the summary to stderr in, 0 to never print it
+     */
+    public SimulationMetrics(long seed, int dumpSeconds) {
+        try {
+            name = new ObjectName("game:type=SimulationMetrics,seed=" + seed + ",id=" + IDS.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register the simulation metrics", e);
+        }
+        if (dumpSeconds > 0) {
+            dump = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "metrics dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dump.scheduleAtFixedRate(() -> System.err.println(getSummary()), dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    void recordTick(long nanos, int vehicleCount) {
+        tickNanos.record(nanos);
+        vehicles.record(vehicleCount);
+    }
+
+    void recordControllerStep(long nanos) {
+        controllerStepNanos.record(nanos);
+    }
+
+    void recordBoardUpdate(long nanos) {
+        boardUpdateNanos.record(nanos);
+    }
+
+    void recordPaint(long nanos) {
+        paintNanos.record(nanos);
+    }
+
+    /**
+     * records a successor set computed by the BDD controller, and the state of the BDD package after computing it.
+     * @param size the number of possible next states
+     * @param factory the BDD package
+     */
+    void recordSuccessors(int size, BDDFactory factory) {
+        successors.record(size);
+        this.factory = factory;
+        refreshBdd();
+    }
+
+    /**
+     * reads the state of the BDD package, after every computed successor set and whenever its numbers are read.
+     * read from another thread, the counters are not synchronized with the simulation, so they may lag a little.
+     */
+    private synchronized void refreshBdd() {
+        BDDFactory bdd = factory;
+        if (bdd == null) {
+            return;
+        }
+        long nodes = bdd.getNodeNum();
+        bddNodes = nodes;
+        if (nodes > maxBddNodes) {
+            maxBddNodes = nodes;
+        }
+        bddTableSize = bdd.getNodeTableSize();
+        BDDFactory.GCStats gc = bdd.getGCStats();
+        bddGcCount = gc.num;
+        bddGcMillis = gc.sumtime;
+    }
+
+    /**
+     * adds a successor cache to the hits and misses, unless it was already added by another controller sharing it.
+     * @param cache
+     */
+    synchronized void addCache(SuccessorCache cache) {
+        for (SuccessorCache added : caches) {
+            if (added == cache) {
+                return;
+            }
+        }
+        caches.add(cache);
+    }
+
+    @Override
+    public long getTicks() {
+        return tickNanos.getCount();
+    }
+
+    @Override
+    public double getTickMeanMicros() {
+        return tickNanos.getMean() / MICROS;
+    }
+
+    @Override
+    public double getTickP99Micros() {
+        return tickNanos.getPercentile(99) / MICROS;
+    }
+
+    @Override
+    public double getTickMaxMicros() {
+        return tickNanos.getMax() / MICROS;
+    }
+
+    @Override
+    public double getControllerStepMeanMicros() {
+        return controllerStepNanos.getMean() / MICROS;
+    }
+
+    @Override
+    public double getControllerStepP99Micros() {
+        return controllerStepNanos.getPercentile(99) / MICROS;
+    }
+
+    @Override
+    public double getControllerStepMaxMicros() {
+        return controllerStepNanos.getMax() / MICROS;
+    }
+
+    @Override
+    public double getBoardUpdateMeanMicros() {
+        return boardUpdateNanos.getMean() / MICROS;
+    }
+
+    @Override
+    public double getBoardUpdateP99Micros() {
+        return boardUpdateNanos.getPercentile(99) / MICROS;
+    }
+
+    @Override
+    public double getPaintMeanMicros() {
+        return paintNanos.getMean() / MICROS;
+    }
+
+    @Override
+    public double getPaintP99Micros() {
+        return paintNanos.getPercentile(99) / MICROS;
+    }
+
+    @Override
+    public double getMeanVehicles() {
+        return vehicles.getMean();
+    }
+
+    @Override
+    public long getMaxVehicles() {
+        return vehicles.getMax();
+    }
+
+    @Override
+    public double getMeanSuccessors() {
+        return successors.getMean();
+    }
+
+    @Override
+    public long getMaxSuccessors() {
+        return successors.getMax();
+    }
+
+    @Override
+    public long getBddNodes() {
+        refreshBdd();
+        return bddNodes;
+    }
+
+    @Override
+    public long getMaxBddNodes() {
+        refreshBdd();
+        return maxBddNodes;
+    }
+
+    @Override
+    public long getBddTableSize() {
+        refreshBdd();
+        return bddTableSize;
+    }
+
+    @Override
+    public long getBddGcCount() {
+        refreshBdd();
+        return bddGcCount;
+    }
+
+    @Override
+    public long getBddGcMillis() {
+        refreshBdd();
+        return bddGcMillis;
+    }
+
+    /**
+     * the counters of the caches are read without synchronization, so they may lag behind the simulation a little.
+     */
+    @Override
+    public synchronized long getCacheHits() {
+        long hits = 0;
+        for (SuccessorCache cache : caches) {
+            hits += cache.getHits();
+        }
+        return hits;
+    }
+
+    @Override
+    public synchronized long getCacheMisses() {
+        long misses = 0;
+        for (SuccessorCache cache : caches) {
+            misses += cache.getMisses();
+        }
+        return misses;
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        append(summary, "tick (us): ", tickNanos, MICROS);
+        append(summary, "controller step (us): ", controllerStepNanos, MICROS);
+        append(summary, "board update (us): ", boardUpdateNanos, MICROS);
+        append(summary, "paint (us): ", paintNanos, MICROS);
+        append(summary, "cars on the board: ", vehicles, 1);
+        append(summary, "successor set size: ", successors, 1);
+        if (successors.getCount() > 0) {
+            summary.append(String.format("bdd nodes: %d (max %d) of %d, %d gcs in %d ms, cache hits %d, misses %d%n",
+                    getBddNodes(), getMaxBddNodes(), getBddTableSize(), getBddGcCount(), getBddGcMillis(),
+                    getCacheHits(), getCacheMisses()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * appends a line for a histogram, if anything was recorded in it.
+     * the event engine, for one, has no ticks to time.
+     */
+    private static void append(StringBuilder summary, String label, LogHistogram histogram, double scale) {
+        if (histogram.getCount() > 0) {
+            summary.append(label).append(histogram.toString(scale)).append('\n');
+        }
+    }
+
+    /**
+     * stops printing the summary and unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        if (dump != null) {
+            dump.shutdownNow();
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            // already gone
+        }
+    }
+}
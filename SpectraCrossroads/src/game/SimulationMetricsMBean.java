@@ -0,0 +1,53 @@
+package game;
+
+/**
+ * the management interface of SimulationMetrics, shown by jconsole or VisualVM under "game".
+ * times are in microseconds.
+ */
+public interface SimulationMetricsMBean {
+    long getTicks();
+
+    double getTickMeanMicros();
+
+    double getTickP99Micros();
+
+    double getTickMaxMicros();
+
+    double getControllerStepMeanMicros();
+
+    double getControllerStepP99Micros();
+
+    double getControllerStepMaxMicros();
+
+    double getBoardUpdateMeanMicros();
+
+    double getBoardUpdateP99Micros();
+
+    double getPaintMeanMicros();
+
+    double getPaintP99Micros();
+
+    double getMeanVehicles();
+
+    long getMaxVehicles();
+
+    double getMeanSuccessors();
+
+    long getMaxSuccessors();
+
+    long getBddNodes();
+
+    long getMaxBddNodes();
+
+    long getBddTableSize();
+
+    long getBddGcCount();
+
+    long getBddGcMillis();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    String getSummary();
+}
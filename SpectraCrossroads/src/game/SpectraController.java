@@ -0,0 +1,223 @@
+package game;
+
+import net.sf.javabdd.BDD;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * drives the traffic lights with the spectra synthesized controller.
+ * independent of the UI, so it can be stepped by the interactive game or by a headless run.
+ * a board with several intersections has a controller for each of them, all of the same synthesized controller.
+ * the synthesized controller of a folder is read once into a SpectraStrategy shared by all instances,
+ * an instance only holds its current state (a single BDD node and its packed key) and its source of choices,
+ * so a board of thousands of intersections adds only bytes per intersection.
+ * the next state is picked uniformly among all the possible next states, which have to be enumerated,
+ * or, in random walk mode, by assigning the variables one by one to a random value that leaves a possible state,
+ * which takes one BDD operation per variable however many next states there are.
+ * the walk does not pick uniformly: a value that leaves few states is picked as often as a value that leaves many.
+ * the controllers of a simulation share a single successor cache of the possible next states.
+ * a walk is never cached: a cached walk would make every intersection in the same state and input
+ * move the same way, like a determinized controller, so in random walk mode each step walks again
+ * with the choices of its own controller.
+ */
+public class SpectraController implements TrafficController {
+    private SpectraStrategy strategy;
+    private SuccessorCache cache;
+    private boolean randomWalk;
+    private SplittableRandom random;
+    private BDD currentState;
+    private long currentKey;
+    private SimulationMetrics metrics;
+    static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+    /**
+     * constructor.
+     * reads the maximum number of cars from the spec and loads the synthesized controller.
+     * @param path the folder of the synthesized controller (usually "out/")
+     * @throws IOException
+     */
+    public SpectraController(String path) throws IOException {
+        this(path, DEFAULT_CACHE_CAPACITY, false, new SplittableRandom());
+    }
+
+    /**
+     * constructor.
+     * reads the maximum number of cars from the spec and loads the synthesized controller,
+     * with a successor cache of its own.
+     * @param path the folder of the synthesized controller (usually "out/")
+     * @param cacheCapacity the number of (state, environment input) entries to cache, 0 disables the cache,
+     * ignored in random walk mode
+     * @param randomWalk pick the next state by a random walk instead of uniformly among all the possible next states
+     * @param random the source of the choices among the possible next states
+     * @throws IOException
+     */
+    public SpectraController(String path, int cacheCapacity, boolean randomWalk, SplittableRandom random)
+            throws IOException {
+        this(SpectraStrategy.of(path), null, randomWalk, random);
+        cache = randomWalk ? null : strategy.newCache(cacheCapacity);
+    }
+
+    /**
+     * constructor.
+     * @param strategy the loaded synthesized controller
+     * @param cache the successor cache, usually shared with the other controllers of the strategy, or null,
+     * ignored in random walk mode
+     * @param randomWalk pick the next state by a random walk instead of uniformly among all the possible next states
+     * @param random the source of the choices among the possible next states
+     */
+    public SpectraController(SpectraStrategy strategy, SuccessorCache cache, boolean randomWalk,
+                             SplittableRandom random) {
+        this.strategy = strategy;
+        this.cache = randomWalk ? null : cache;
+        this.randomWalk = randomWalk;
+        this.random = random;
+    }
+
+    /**
+     * where the magic happens.
+     * based on the environment state (cars on the road)
+     * determines the possible next traffic light actions
+     * based on the spectra spec.
+     * chooses one of the possible actions randomly.
+     * the possible actions of a state and environment input are cached,
+     * so repeated combinations skip the BDD operations, except in random walk mode.
+     *
+     * @param verticalWaiting number of cars waiting in the vertical road
+     * @param horizontalWaiting number of cars waiting in the horizontal road
+     * @param verticalCrossing is a vertical car crossing the intersection
+     * @param horizontalCrossing is a horizontal car crossing the intersection
+     * @return the selected system state
+     */
+    @Override
+    public SystemState step(int verticalWaiting, int horizontalWaiting,
+                            boolean verticalCrossing, boolean horizontalCrossing) {
+        SystemState systemState;
+        if (currentState == null) {
+            currentState = strategy.getInitialState().id();
+            currentKey = strategy.getInitialKey();
+            systemState = strategy.getInitialSystemState();
+        } else {
+            int lineMax = strategy.getLineMax();
+            verticalWaiting = verticalWaiting < lineMax ? verticalWaiting : lineMax;
+            horizontalWaiting = horizontalWaiting < lineMax ? horizontalWaiting : lineMax;
+            int envIndex = CompiledController.envIndex(lineMax,
+                    verticalWaiting, horizontalWaiting, verticalCrossing, horizontalCrossing);
+            SuccessorCache.Choices systemChoices = null;
+            long key = 0;
+            if (cache != null) {
+                key = currentKey * strategy.getEnvInputs() + envIndex;
+                systemChoices = cache.get(key);
+            }
+            if (systemChoices == null) {
+                systemChoices = strategy.getSystemChoices(currentState, envIndex, randomWalk, random);
+                if (systemChoices.size() == 0) {
+                    throw new IllegalStateException("the controller has no successor for vertical queue "
+                            + verticalWaiting + ", horizontal queue " + horizontalWaiting + ", vertical crossing "
+                            + verticalCrossing + ", horizontal crossing " + horizontalCrossing);
+                }
+                if (metrics != null) {
+                    metrics.recordSuccessors(systemChoices.size(), currentState.getFactory());
+                }
+                if (cache != null) {
+                    cache.put(key, systemChoices);
+                }
+            }
+            int pick = random.nextInt(systemChoices.size());
+            currentState.free();
+            currentState = systemChoices.states[pick].id();
+            currentKey = systemChoices.keys[pick];
+            systemState = systemChoices.systemStates[pick];
+            if (cache == null) {
+                systemChoices.free();
+            }
+        }
+        return systemState;
+    }
+
+    /**
+     * finds the maximum number of cars specified in the spectra file
+     * in type CarsCount = Int(0..<max number>);
+     * using regex.
+     * @param line: the spectra file
+     * @return the max number of cars or -1 if no match was found
+     */
+    private static int findMaxLineCount(String line) {
+        int result = -1;
+        line = line.replaceAll("\\s+", "");
+        Pattern p = Pattern.compile("CarsCount=Int\\([0-9]+\\.\\.([0-9]+)\\)");
+        Matcher m = p.matcher(line);
+        if (m.find()) {
+            String foundPattern = m.group(1);
+            result = Integer.parseInt(foundPattern);
+        }
+        return result;
+    }
+
+    /**
+     * gets the maximum number of cars allowed in the spectra file
+     * in type CarsCount = Int(0..<max number>);
+     * which overrides the default value of 5.
+     * prevents an overflow of value not expected by the spec.
+     * the spec is read whole before it is searched, so a declaration cannot be split between two reads.
+     * @param path the folder of the synthesized controller
+     * @return the max number of cars or -1 if no match was found
+     * @throws IOException
+     */
+    static int getMaxCarsFromSpectraFile(String path) throws IOException {
+        String fileToBeExtracted = "SpectraCrossroads/CrossRoads.spectra";
+        String zipPackage = path + "/spec.zip";
+        int maxCars = -1;
+        try (FileInputStream fileInputStream = new FileInputStream(zipPackage);
+             ZipInputStream zin = new ZipInputStream(new BufferedInputStream(fileInputStream))) {
+            ZipEntry ze;
+            while ((ze = zin.getNextEntry()) != null) {
+                if (ze.getName().equals(fileToBeExtracted)) {
+                    ByteArrayOutputStream spec = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[9000];
+                    int read;
+                    while ((read = zin.read(buffer)) != -1) {
+                        spec.write(buffer, 0, read);
+                    }
+                    int newMax = findMaxLineCount(new String(spec.toByteArray(), StandardCharsets.UTF_8));
+                    if (newMax > 0) {
+                        maxCars = newMax;
+                    }
+                    break;
+                }
+            }
+        }
+        return maxCars;
+    }
+
+    public int getLineMax() {
+        return strategy.getLineMax();
+    }
+
+    /**
+     * reports the size of every computed successor set and the BDD nodes in use to the metrics,
+     * and adds the successor cache to them (once, if it is shared).
+     * @param metrics
+     */
+    void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+        if (cache != null) {
+            metrics.addCache(cache);
+        }
+    }
+
+    /**
+     * @return the successor cache or null if caching is disabled
+     */
+    public SuccessorCache getCache() {
+        return cache;
+    }
+}
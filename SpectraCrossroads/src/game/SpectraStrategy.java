@@ -0,0 +1,231 @@
+package game;
+
+import net.sf.javabdd.BDD;
+import net.sf.javabdd.BDDFactory;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicController;
+import tau.smlab.syntech.games.controller.symbolic.SymbolicControllerReaderWriter;
+import tau.smlab.syntech.jtlv.BDDPackage;
+import tau.smlab.syntech.jtlv.Env;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * the synthesized controller of a folder as the SpectraControllers of all the intersections share it:
+ * the controller BDDs, the environment values of every input, the decoder of the states and the initial state.
+ * read once per folder and never changed, so an intersection only adds its current state to it.
+ * the BDD variables are global and the decoder reuses its buffer, so the controllers sharing a strategy
+ * have to be stepped by one thread at a time.
+ */
+public class SpectraStrategy {
+    private SymbolicController ctrl;
+    private int lineMax = 5;
+    private int envInputs;
+    private BDD[] envCubes;
+    private int[] stateVars;
+    private StateDecoder decoder;
+    private BDD initialState;
+    private SystemState initialSystemState;
+    private long initialKey;
+    private static final Map<String, SpectraStrategy> LOADED = new HashMap<>();
+
+    private SpectraStrategy() {
+    }
+
+    /**
+     * reads the synthesized controller of a folder, or returns it if it was already read.
+     * @param path the folder of the synthesized controller (usually "out/")
+     * @return
+     * @throws IOException
+     */
+    public static synchronized SpectraStrategy of(String path) throws IOException {
+        SpectraStrategy strategy = LOADED.get(path);
+        if (strategy == null) {
+            strategy = load(path);
+            LOADED.put(path, strategy);
+        }
+        return strategy;
+    }
+
+    /**
+     * reads the maximum number of cars from the spec and loads the synthesized controller.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    private static SpectraStrategy load(String path) throws IOException {
+        SpectraStrategy strategy = new SpectraStrategy();
+        int maxCars = SpectraController.getMaxCarsFromSpectraFile(path);
+        if (maxCars > 0) {
+            strategy.lineMax = maxCars;
+        }
+        BDDPackage.setCurrPackage(BDDPackage.JTLV);
+        strategy.ctrl = SymbolicControllerReaderWriter.readSymbolicController(path);
+        strategy.envInputs = CompiledController.envInputs(strategy.lineMax);
+        strategy.envCubes = envCubes(strategy.lineMax);
+        strategy.stateVars = Env.globalUnprimeVars().toArray();
+        strategy.decoder = new StateDecoder();
+        BDD initial = strategy.ctrl.initial();
+        strategy.initialState = initial.satOne(Env.globalUnprimeVars());
+        strategy.initialSystemState = strategy.decoder.decode(strategy.initialState);
+        strategy.initialKey = strategy.decoder.key();
+        return strategy;
+    }
+
+    /**
+     * builds the BDD of the environment values of every environment input, indexed by CompiledController.envIndex.
+     * the BDDs live as long as the strategy, so they are never freed.
+     * @param lineMax the maximum number of cars in a road in the spec
+     * @return
+     */
+    private static BDD[] envCubes(int lineMax) {
+        BDD[] cubes = new BDD[CompiledController.envInputs(lineMax)];
+        BDD[] vertical = new BDD[lineMax + 1];
+        BDD[] horizontal = new BDD[lineMax + 1];
+        for (int cars = 0; cars <= lineMax; cars++) {
+            vertical[cars] = Env.getBDDValue("carsWaitingInVerticalRoad", cars);
+            horizontal[cars] = Env.getBDDValue("carsWaitingInHorizontalRoad", cars);
+        }
+        BDD[] verticalCrossing = {Env.getBDDValue("verticalCarCrossing", "false"),
+                Env.getBDDValue("verticalCarCrossing", "true")};
+        BDD[] horizontalCrossing = {Env.getBDDValue("horizontalCarCrossing", "false"),
+                Env.getBDDValue("horizontalCarCrossing", "true")};
+        for (int verticalCars = 0; verticalCars <= lineMax; verticalCars++) {
+            for (int horizontalCars = 0; horizontalCars <= lineMax; horizontalCars++) {
+                BDD queues = vertical[verticalCars].and(horizontal[horizontalCars]);
+                for (int v = 0; v < 2; v++) {
+                    BDD withVertical = queues.and(verticalCrossing[v]);
+                    for (int h = 0; h < 2; h++) {
+                        cubes[CompiledController.envIndex(lineMax, verticalCars, horizontalCars, v == 1, h == 1)]
+                                = withVertical.and(horizontalCrossing[h]);
+                    }
+                    withVertical.free();
+                }
+                queues.free();
+            }
+        }
+        free(vertical);
+        free(horizontal);
+        free(verticalCrossing);
+        free(horizontalCrossing);
+        return cubes;
+    }
+
+    private static void free(BDD[] bdds) {
+        for (BDD bdd : bdds) {
+            bdd.free();
+        }
+    }
+
+    /**
+     * creates a successor cache for the controllers of this strategy.
+     * a single cache can be shared by all of them, since the choices only depend on the state and the input.
+     * @param capacity the number of (state, environment input) entries to cache
+     * @return the cache, or null if the capacity is 0 or a state and an input do not fit in a key
+     */
+    public SuccessorCache newCache(int capacity) {
+        int keyBits = decoder.stateBits() + 64 - Long.numberOfLeadingZeros(envInputs - 1);
+        if (capacity > 0 && keyBits <= 63) {
+            return new SuccessorCache(capacity);
+        }
+        return null;
+    }
+
+    /**
+     * enumerates the states the controller allows from a state for the given environment values
+     * and decodes each of them.
+     * in random walk mode only a single state, picked by the walk, is returned.
+     * @param state the current state
+     * @param envIndex the index of the environment values, see CompiledController.envIndex
+     * @param randomWalk
+     * @param random the source of the choices of the walk
+     * @return the possible next states, empty if there are none
+     */
+    SuccessorCache.Choices getSystemChoices(BDD state, int envIndex, boolean randomWalk, SplittableRandom random) {
+        BDD succs = ctrl.succ(state);
+        BDD succsWithVehicles = succs.and(envCubes[envIndex]);
+        succs.free();
+        List<BDD> states = new ArrayList<>();
+        if (randomWalk) {
+            if (!succsWithVehicles.isZero()) {
+                states.add(walk(succsWithVehicles, random));
+            }
+        } else {
+            BDD.BDDIterator it = new BDD.BDDIterator(succsWithVehicles, Env.globalUnprimeVars());
+            while (it.hasNext()) {
+                states.add(it.next());
+            }
+        }
+        succsWithVehicles.free();
+        SuccessorCache.Choices systemChoices = new SuccessorCache.Choices(states.size());
+        for (int i = 0; i < states.size(); i++) {
+            systemChoices.states[i] = states.get(i);
+            systemChoices.systemStates[i] = decoder.decode(states.get(i));
+            systemChoices.keys[i] = decoder.key();
+        }
+        return systemChoices;
+    }
+
+    /**
+     * picks one of a set of states by assigning its variables one by one,
+     * each to a random value if that leaves a state of the set and to the other value otherwise.
+     * @param states a set of states, not empty
+     * @param random
+     * @return a single state of the set
+     */
+    private BDD walk(BDD states, SplittableRandom random) {
+        BDDFactory factory = states.getFactory();
+        BDD state = states.id();
+        for (int var : stateVars) {
+            boolean value = random.nextBoolean();
+            BDD picked = assign(state, factory, var, value);
+            if (picked.isZero()) {
+                picked.free();
+                picked = assign(state, factory, var, !value);
+            }
+            state.free();
+            state = picked;
+        }
+        return state;
+    }
+
+    private static BDD assign(BDD states, BDDFactory factory, int var, boolean value) {
+        BDD literal = value ? factory.ithVar(var) : factory.nithVar(var);
+        BDD assigned = states.and(literal);
+        literal.free();
+        return assigned;
+    }
+
+    /**
+     * @return the state the controllers start in, a single assignment of the unprimed variables
+     */
+    BDD getInitialState() {
+        return initialState;
+    }
+
+    SystemState getInitialSystemState() {
+        return initialSystemState;
+    }
+
+    /**
+     * @return the packed key of the initial state
+     */
+    long getInitialKey() {
+        return initialKey;
+    }
+
+    public int getLineMax() {
+        return lineMax;
+    }
+
+    /**
+     * @return the number of environment inputs, see CompiledController.envInputs
+     */
+    public int getEnvInputs() {
+        return envInputs;
+    }
+}
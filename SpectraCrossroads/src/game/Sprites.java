@@ -0,0 +1,70 @@
+package game;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+
+/**
+ * the images of the game, shared by all vehicles, tiles and intersections.
+ * loaded once, on the first call that needs them, so a headless simulation never loads them.
+ * images are read from the classpath (img is a source folder, so they are packed with the classes)
+ * and from the img folder of the working directory if they are not found there.
+ */
+public class Sprites {
+
+    private Sprites() {
+    }
+
+    public static BufferedImage car(Direction direction) {
+        return Atlas.CARS[direction.ordinal()];
+    }
+
+    public static BufferedImage tile(TileType type) {
+        return Atlas.TILES[type.ordinal()];
+    }
+
+    public static BufferedImage trafficLight(Direction direction, Color light) {
+        return Atlas.LIGHTS[direction.ordinal()][light.ordinal()];
+    }
+
+    /**
+     * holds the images. the JVM initializes it (thread safely) on its first use.
+     */
+    private static class Atlas {
+        private static final BufferedImage[] CARS = new BufferedImage[Direction.values().length];
+        private static final BufferedImage[] TILES = new BufferedImage[TileType.values().length];
+        private static final BufferedImage[][] LIGHTS = new BufferedImage[Direction.values().length][Color.values().length];
+
+        static {
+            CARS[Direction.NORTH.ordinal()] = read("car_north.png");
+            CARS[Direction.SOUTH.ordinal()] = read("car_south.png");
+            CARS[Direction.EAST.ordinal()] = read("car_east.png");
+            CARS[Direction.WEST.ordinal()] = read("car_west.png");
+            TILES[TileType.GRASS.ordinal()] = read("grass.png");
+            TILES[TileType.VERTICAL.ordinal()] = read("vertical_road.png");
+            TILES[TileType.HORIZONTAL.ordinal()] = read("horizontal_road.png");
+            TILES[TileType.INTERSECTION.ordinal()] = read("intersection.png");
+            for (Direction direction : Direction.values()) {
+                String name = direction.name().charAt(0) + direction.name().substring(1).toLowerCase();
+                LIGHTS[direction.ordinal()][Color.GREEN.ordinal()] = read("greenLight" + name + ".png");
+                LIGHTS[direction.ordinal()][Color.RED.ordinal()] = read("redLight" + name + ".png");
+                LIGHTS[direction.ordinal()][Color.OFF.ordinal()] = read("offLight" + name + ".png");
+            }
+        }
+
+        private static BufferedImage read(String fileName) {
+            try {
+                URL resource = Sprites.class.getResource("/" + fileName);
+                if (resource != null) {
+                    return ImageIO.read(resource);
+                }
+                return ImageIO.read(new File("img/" + fileName));
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot read image " + fileName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package game;
+
+import net.sf.javabdd.BDD;
+import tau.smlab.syntech.jtlv.Env;
+
+import java.util.Arrays;
+
+/**
+ * decodes the variables of a controller state directly from the bits of its BDD.
+ * the bit positions and the values of every variable are looked up once from the loaded domains,
+ * so decoding a state walks the BDD once and does not build any strings.
+ * the variables are the PackedVars of the packed states, read here from the BDD variables directly.
+ * must be created after the controller (and with it the variables) was loaded.
+ */
+public class StateDecoder {
+    private boolean[] assignment;
+    private int[] unprimeVars;
+    private PackedVar verticalLights;
+    private PackedVar horizontalLights;
+    private PackedVar verticalQueue;
+    private PackedVar horizontalQueue;
+    private PackedVar verticalBlinks;
+    private PackedVar horizontalBlinks;
+    private PackedVar verticalCrossing;
+    private PackedVar horizontalCrossing;
+    private Color[] verticalLightValues;
+    private Color[] horizontalLightValues;
+    private int[] verticalQueueValues;
+    private int[] horizontalQueueValues;
+    private int[] verticalBlinksValues;
+    private int[] horizontalBlinksValues;
+    private boolean[] verticalCrossingValues;
+    private boolean[] horizontalCrossingValues;
+
+    public StateDecoder() {
+        assignment = new boolean[Env.TRUE().getFactory().varNum()];
+        unprimeVars = Env.globalUnprimeVars().toArray();
+        Arrays.sort(unprimeVars);
+        verticalLights = PackedVar.of("verticalLights", unprimeVars);
+        horizontalLights = PackedVar.of("horizontalLights", unprimeVars);
+        verticalQueue = PackedVar.of("carsWaitingInVerticalRoad", unprimeVars);
+        horizontalQueue = PackedVar.of("carsWaitingInHorizontalRoad", unprimeVars);
+        verticalBlinks = PackedVar.of("verticalBlinks", unprimeVars);
+        horizontalBlinks = PackedVar.of("horizontalBlinks", unprimeVars);
+        verticalCrossing = PackedVar.of("verticalCarCrossing", unprimeVars);
+        horizontalCrossing = PackedVar.of("horizontalCarCrossing", unprimeVars);
+        verticalLightValues = verticalLights.colorValues();
+        horizontalLightValues = horizontalLights.colorValues();
+        verticalQueueValues = verticalQueue.intValues();
+        horizontalQueueValues = horizontalQueue.intValues();
+        verticalBlinksValues = verticalBlinks.intValues();
+        horizontalBlinksValues = horizontalBlinks.intValues();
+        verticalCrossingValues = verticalCrossing.booleanValues();
+        horizontalCrossingValues = horizontalCrossing.booleanValues();
+    }
+
+    /**
+     * decodes a single controller state.
+     * @param state a BDD assigning a single value to each unprimed variable
+     * @return the system state held by the BDD
+     */
+    public SystemState decode(BDD state) {
+        readAssignment(state);
+        return new SystemState(
+                verticalLightValues[verticalLights.index(assignment, unprimeVars)],
+                horizontalLightValues[horizontalLights.index(assignment, unprimeVars)],
+                verticalQueueValues[verticalQueue.index(assignment, unprimeVars)],
+                horizontalQueueValues[horizontalQueue.index(assignment, unprimeVars)],
+                verticalBlinksValues[verticalBlinks.index(assignment, unprimeVars)],
+                horizontalBlinksValues[horizontalBlinks.index(assignment, unprimeVars)],
+                verticalCrossingValues[verticalCrossing.index(assignment, unprimeVars)],
+                horizontalCrossingValues[horizontalCrossing.index(assignment, unprimeVars)]);
+    }
+
+    /**
+     * packs the unprimed variables of the last decoded state into a long, one bit per variable.
+     * only meaningful if stateBits() is at most 63.
+     * @return
+     */
+    public long key() {
+        long key = 0;
+        for (int i = 0; i < unprimeVars.length; i++) {
+            if (assignment[unprimeVars[i]]) {
+                key |= 1L << i;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the number of bits needed to pack a state
+     */
+    public int stateBits() {
+        return unprimeVars.length;
+    }
+
+    /**
+     * walks the single path of the state BDD to its one terminal
+     * and records the value of every variable on the way.
+     * variables that do not appear on the path are read as 0, like satOne does.
+     * @param state
+     */
+    private void readAssignment(BDD state) {
+        Arrays.fill(assignment, false);
+        BDD node = state.id();
+        while (!node.isOne() && !node.isZero()) {
+            BDD low = node.low();
+            BDD next;
+            if (low.isZero()) {
+                assignment[node.var()] = true;
+                low.free();
+                next = node.high();
+            } else {
+                next = low;
+            }
+            node.free();
+            node = next;
+        }
+        node.free();
+    }
+}
@@ -0,0 +1,109 @@
+package game;
+
+import net.sf.javabdd.BDD;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a bounded cache of the system choices the spectra controller allows,
+ * keyed by the packed controller state together with the environment input.
+ * the choices do not depend on the intersection, so the controllers of a simulation share one cache.
+ * the least recently used entry is evicted (and its BDDs freed) when the cache is full.
+ * keeps hit, miss and eviction counters so the capacity can be sized.
+ */
+public class SuccessorCache {
+    private int capacity;
+    private Map<Long, Choices> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    @SuppressWarnings("serial")
+    public SuccessorCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Long, Choices>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Choices> eldest) {
+                if (size() > SuccessorCache.this.capacity) {
+                    eldest.getValue().free();
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param key
+     * @return the cached choices or null if they are not cached
+     */
+    Choices get(long key) {
+        Choices choices = entries.get(key);
+        if (choices == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return choices;
+    }
+
+    void put(long key, Choices choices) {
+        entries.put(key, choices);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        long lookups = hits + misses;
+        return "successor cache: " + entries.size() + "/" + capacity + " entries, " + hits + " hits, "
+                + misses + " misses (" + (lookups == 0 ? 0 : 100 * hits / lookups) + "% hit rate), "
+                + evictions + " evictions";
+    }
+
+    /**
+     * the enumerated choices of one controller step:
+     * the state BDDs together with their packed keys and decoded system states.
+     */
+    static class Choices {
+        BDD[] states;
+        long[] keys;
+        SystemState[] systemStates;
+
+        Choices(int size) {
+            states = new BDD[size];
+            keys = new long[size];
+            systemStates = new SystemState[size];
+        }
+
+        int size() {
+            return states.length;
+        }
+
+        void free() {
+            for (BDD state : states) {
+                state.free();
+            }
+        }
+    }
+}
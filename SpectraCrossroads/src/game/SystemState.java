@@ -1,16 +1,32 @@
 package game;
 
 /**
- * holds the traffic light state of the spectra system.
+ * holds the state of the spectra controller:
+ * the traffic lights of the system and the values it sees for the rest of the variables.
  *
  */
 public class SystemState {
     private Color verticalLight;
     private Color horizontalLight;
+    private int verticalQueue;
+    private int horizontalQueue;
+    private int verticalBlinks;
+    private int horizontalBlinks;
+    private boolean verticalCarCrossing;
+    private boolean horizontalCarCrossing;
 
-    public SystemState(Color verticalLight, Color horizontalLight) {
+    public SystemState(Color verticalLight, Color horizontalLight,
+                       int verticalQueue, int horizontalQueue,
+                       int verticalBlinks, int horizontalBlinks,
+                       boolean verticalCarCrossing, boolean horizontalCarCrossing) {
         this.verticalLight = verticalLight;
         this.horizontalLight = horizontalLight;
+        this.verticalQueue = verticalQueue;
+        this.horizontalQueue = horizontalQueue;
+        this.verticalBlinks = verticalBlinks;
+        this.horizontalBlinks = horizontalBlinks;
+        this.verticalCarCrossing = verticalCarCrossing;
+        this.horizontalCarCrossing = horizontalCarCrossing;
     }
     public Color getVerticalLight() {
         return verticalLight;
@@ -21,5 +37,35 @@ public class SystemState {
         return horizontalLight;
     }
 
+    public int getVerticalQueue() {
+        return verticalQueue;
+    }
+
+    public int getHorizontalQueue() {
+        return horizontalQueue;
+    }
+
+    public int getVerticalBlinks() {
+        return verticalBlinks;
+    }
+
+    public int getHorizontalBlinks() {
+        return horizontalBlinks;
+    }
+
+    public boolean isVerticalCarCrossing() {
+        return verticalCarCrossing;
+    }
 
+    public boolean isHorizontalCarCrossing() {
+        return horizontalCarCrossing;
+    }
+
+    @Override
+    public String toString() {
+        return "vertical: " + verticalLight + " horizontal: " + horizontalLight +
+                " vertical queue: " + verticalQueue + " horizontal queue: " + horizontalQueue +
+                " vertical blinks: " + verticalBlinks + " horizontal blinks: " + horizontalBlinks +
+                " vertical crossing: " + verticalCarCrossing + " horizontal crossing: " + horizontalCarCrossing;
+    }
 }
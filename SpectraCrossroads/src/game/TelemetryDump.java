@@ -0,0 +1,92 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+
+/**
+ * prints a telemetry file written by TelemetryWriter as CSV, one line per record, e.g.
+ * java game.TelemetryDump telemetry.bin > telemetry.csv
+ * the file is streamed, so files of any size can be dumped.
+ * an optional second argument limits the dump to a single intersection.
+ */
+public class TelemetryDump {
+    private static final Color[] COLORS = Color.values();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: TelemetryDump <telemetry file> [intersection]");
+            System.exit(1);
+        }
+        int only = args.length > 1 ? Integer.parseInt(args[1]) : -1;
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 1 << 16))) {
+            if (in.readInt() != TelemetryWriter.MAGIC) {
+                throw new IOException(args[0] + " is not a telemetry file");
+            }
+            int version = in.readInt();
+            if (version != TelemetryWriter.VERSION) {
+                throw new IOException("unsupported telemetry version " + version + " in " + args[0]);
+            }
+            int recordSize = in.readInt();
+            in.readInt();
+            out.println("tick,intersection,passed,eastWaiting,westWaiting,northWaiting,southWaiting,"
+                    + "verticalLight,horizontalLight,verticalQueue,horizontalQueue,verticalBlinks,horizontalBlinks,"
+                    + "stepped,verticalCrossing,horizontalCrossing");
+            byte[] record = new byte[recordSize];
+            ByteBuffer fields = ByteBuffer.wrap(record);
+            while (readRecord(in, record)) {
+                fields.clear();
+                long tick = fields.getLong();
+                int passed = fields.getInt();
+                int intersection = fields.getShort();
+                if (only >= 0 && intersection != only) {
+                    continue;
+                }
+                StringBuilder line = new StringBuilder();
+                line.append(tick).append(',').append(intersection).append(',').append(passed & 0xffffffffL);
+                for (int direction = 0; direction < 4; direction++) {
+                    line.append(',').append(fields.getShort());
+                }
+                line.append(',').append(COLORS[fields.get()]);
+                line.append(',').append(COLORS[fields.get()]);
+                for (int i = 0; i < 4; i++) {
+                    line.append(',').append(fields.get());
+                }
+                int flags = fields.get();
+                line.append(',').append((flags & TelemetryWriter.FLAG_STEPPED) != 0);
+                line.append(',').append((flags & TelemetryWriter.FLAG_VERTICAL_CROSSING) != 0);
+                line.append(',').append((flags & TelemetryWriter.FLAG_HORIZONTAL_CROSSING) != 0);
+                out.println(line);
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * @param in
+     * @param record
+     * @return false at the end of the file
+     * @throws IOException if the file ends in the middle of a record
+     */
+    private static boolean readRecord(DataInputStream in, byte[] record) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        record[0] = (byte) first;
+        try {
+            in.readFully(record, 1, record.length - 1);
+        } catch (EOFException e) {
+            throw new IOException("telemetry file ends in the middle of a record");
+        }
+        return true;
+    }
+}
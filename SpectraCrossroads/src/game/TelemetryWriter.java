@@ -0,0 +1,193 @@
+package game;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * writes telemetry of a run to a compact binary file on a background thread.
+ * the file starts with a header (magic, version, record size, number of intersections, all ints)
+ * followed by fixed-width big-endian records, one per intersection and recorded tick:
+ * <pre>
+ *  0 long  tick
+ *  8 int   cars that entered the intersection so far
+ * 12 short intersection
+ * 14 short cars waiting in each direction, by Direction ordinal (4 shorts)
+ * 22 byte  vertical light, horizontal light (Color ordinals)
+ * 24 byte  vertical queue, horizontal queue, vertical blinks, horizontal blinks of the controller state
+ * 28 byte  flags, see the FLAG constants
+ * 29 3 bytes reserved, 0
+ * </pre>
+ * the records are collected in a few reusable buffers, a full buffer is handed to the writer thread.
+ * when all the buffers wait to be written the simulation waits for the writer,
+ * so a slow disk slows down the run instead of filling the memory.
+ * TelemetryDump prints a file as CSV.
+ */
+public class TelemetryWriter implements AutoCloseable {
+    static final int MAGIC = 0x5343544c; // "SCTL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+    /**
+     * the controller was stepped in the tick of the record, otherwise the record repeats the last step.
+     */
+    static final int FLAG_STEPPED = 1;
+    /**
+     * the controller was told a vertical car is crossing.
+     */
+    static final int FLAG_VERTICAL_CROSSING = 2;
+    /**
+     * the controller was told a horizontal car is crossing.
+     */
+    static final int FLAG_HORIZONTAL_CROSSING = 4;
+    private static final int BUFFER_RECORDS = 2048;
+    private static final int BUFFERS = 8;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private FileChannel channel;
+    private ArrayBlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private ArrayBlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS);
+    private ByteBuffer buffer;
+    private Thread writer;
+    private volatile IOException failure;
+    private boolean closed = false;
+
+    /**
+     * constructor.
+     * creates the file, replacing an existing one, and starts the writer thread.
+     * @param file
+     * @param intersections the number of intersections of the board
+     * @throws IOException if the file cannot be created
+     */
+    public TelemetryWriter(String file, int intersections) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(intersections);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        for (int i = 0; i < BUFFERS - 1; i++) {
+            free.add(ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE));
+        }
+        buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_SIZE);
+        writer = new Thread(this::writeBuffers, "telemetry writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * adds a record. records added after the writer was closed are dropped,
+     * so a shutdown hook can close the writer while the simulation is still running.
+     * @param tick
+     * @param intersection the index of the intersection on the board
+     * @param passed the number of cars that entered the intersection so far
+     * @param waiting the number of cars waiting in each direction, by Direction ordinal
+     * @param state the last state selected by the controller of the intersection
+     * @param flags
+     * @throws UncheckedIOException if writing an earlier record failed
+     */
+    public synchronized void record(long tick, int intersection, long passed, int[] waiting, SystemState state, int flags) {
+        if (closed) {
+            return;
+        }
+        if (!buffer.hasRemaining()) {
+            handOver();
+        }
+        buffer.putLong(tick);
+        buffer.putInt((int) passed);
+        buffer.putShort((short) intersection);
+        for (int direction = 0; direction < 4; direction++) {
+            buffer.putShort((short) Math.min(waiting[direction], Short.MAX_VALUE));
+        }
+        buffer.put((byte) state.getVerticalLight().ordinal());
+        buffer.put((byte) state.getHorizontalLight().ordinal());
+        buffer.put((byte) state.getVerticalQueue());
+        buffer.put((byte) state.getHorizontalQueue());
+        buffer.put((byte) state.getVerticalBlinks());
+        buffer.put((byte) state.getHorizontalBlinks());
+        buffer.put((byte) flags);
+        buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+
+    /**
+     * hands the full buffer to the writer thread and takes an empty one, waiting for one if there is none.
+     */
+    private void handOver() {
+        checkFailure();
+        try {
+            full.put(buffer);
+            buffer = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("interrupted while waiting for the telemetry writer"));
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * writes the buffers handed over by the simulation until the end marker.
+     * after a failed write the buffers are still taken and returned, so the simulation never waits forever,
+     * and the failure is reported to it on the next hand over.
+     */
+    private void writeBuffers() {
+        while (true) {
+            ByteBuffer next;
+            try {
+                next = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (next == END) {
+                return;
+            }
+            next.flip();
+            try {
+                while (failure == null && next.hasRemaining()) {
+                    channel.write(next);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            next.clear();
+            free.add(next);
+        }
+    }
+
+    /**
+     * writes the remaining records, stops the writer thread and closes the file.
+     * @throws IOException if writing a record failed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (buffer.position() > 0) {
+                full.put(buffer);
+            }
+            full.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while closing the telemetry writer");
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
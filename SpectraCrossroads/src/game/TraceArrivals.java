@@ -0,0 +1,314 @@
+package game;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * replays recorded arrivals from a trace file, one car per line: tick,direction,road
+ * e.g. 1200,EAST,0 makes a car enter the first row driving east at tick 1200.
+ * the lines must be sorted by tick, a car of the same tick as the last car of its road end
+ * arrives one tick after it. empty lines and lines starting with # are skipped.
+ * asking again before the next car arrived, e.g. when the board restarts the arrivals, returns the same car.
+ *
+ * the road ends of a board share a single Trace, which streams the file in small chunks through one open channel
+ * and parses every line once, handing its tick to the queue of its road end.
+ * the road ends of the board are created before any of them asks for a car.
+ * a road end with no car in its queue makes the trace read on, but never past the first car after the next tick:
+ * if it still has no car, it asks again the tick before that car instead of bringing one (see bringsCar).
+ * so a road end with few or no cars in the trace does not read ahead for the others,
+ * only the cars of the next ticks are held in memory and traces much larger than the memory can be replayed.
+ * the file is closed at its end, or when the board is closed.
+ */
+public class TraceArrivals implements ArrivalProcess {
+    private Trace trace;
+    private Ticks ticks;
+    private long next = -1;
+    private boolean car = true;
+
+    /**
+     * constructor for a road end that reads the trace on its own.
+     * @param file
+     * @param direction the direction of the cars of the road end
+     * @param road the row of a horizontal road or the column of a vertical road
+     * @throws FileNotFoundException if the file cannot be read
+     */
+    public TraceArrivals(String file, Direction direction, int road) throws FileNotFoundException {
+        this(new Trace(file), direction, road);
+    }
+
+    /**
+     * constructor.
+     * @param trace the trace shared by the road ends of the board
+     * @param direction the direction of the cars of the road end
+     * @param road the row of a horizontal road or the column of a vertical road
+     */
+    public TraceArrivals(Trace trace, Direction direction, int road) {
+        this.trace = trace;
+        this.ticks = trace.register(direction, road);
+    }
+
+    /**
+     * @throws UncheckedIOException if the trace cannot be read, has a malformed line or is not sorted by tick
+     */
+    @Override
+    public long nextArrival(long tick) {
+        if (next > tick) {
+            return next;
+        }
+        car = true;
+        if (trace.read(ticks, tick)) {
+            next = Math.max(tick + 1, ticks.poll());
+        } else if (trace.isFinished()) {
+            next = Long.MAX_VALUE;
+        } else {
+            // the road end has no car before the one read last
+            next = trace.getReadTick() - 1;
+            car = false;
+        }
+        return next;
+    }
+
+    @Override
+    public boolean bringsCar() {
+        return car;
+    }
+
+    /**
+     * a trace does not depend on the interval.
+     */
+    @Override
+    public void setInterval(int min, int max) {
+    }
+
+    /**
+     * closes the shared trace file, the other road ends of the board get no more cars.
+     */
+    @Override
+    public void close() {
+        trace.close();
+    }
+
+    /**
+     * a trace file read once for all the road ends of a board.
+     * like the arrivals of the board it is only read by one thread at a time.
+     */
+    public static class Trace {
+        private static final int CHUNK_SIZE = 1 << 16;
+        private String file;
+        private FileChannel channel;
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int start = 0;
+        private int limit = 0;
+        private boolean end = false;
+        private boolean finished = false;
+        private long readTick = Long.MIN_VALUE;
+        private Map<Long, Ticks> queues = new HashMap<>();
+
+        /**
+         * constructor.
+         * @param file
+         * @throws FileNotFoundException if the file cannot be read
+         */
+        public Trace(String file) throws FileNotFoundException {
+            Path path = Paths.get(file);
+            if (!Files.isReadable(path)) {
+                throw new FileNotFoundException("cannot read arrival trace " + file);
+            }
+            this.file = file;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new FileNotFoundException("cannot read arrival trace " + file + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * @param direction
+         * @param road
+         * @return the queue the cars of the road end are read into.
+         * the cars of road ends that were not registered are skipped,
+         * so all the road ends have to be registered before the first car is read.
+         * @throws IllegalStateException if cars were already read
+         */
+        Ticks register(Direction direction, int road) {
+            if (limit > 0 || end) {
+                throw new IllegalStateException("the road ends of " + file + " have to be created before it is read");
+            }
+            return queues.computeIfAbsent(key(direction, road), key -> new Ticks());
+        }
+
+        private static long key(Direction direction, int road) {
+            return ((long) road << 8) | direction.ordinal();
+        }
+
+        /**
+         * reads cars until the road end has one, the trace read a car after the tick after the given one,
+         * or the trace is finished.
+         * @param ticks the queue of a road end
+         * @param tick the current tick
+         * @return true if the road end has a car
+         */
+        boolean read(Ticks ticks, long tick) {
+            try {
+                while (ticks.isEmpty() && readTick <= tick + 1 && readArrival()) {
+                    // the car was queued for another road end
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return !ticks.isEmpty();
+        }
+
+        /**
+         * @return the tick of the last car read
+         */
+        long getReadTick() {
+            return readTick;
+        }
+
+        /**
+         * @return true if every car of the file was read
+         */
+        boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * reads the next car and queues it for its road end.
+         * @return false at the end of the file
+         * @throws IOException if the trace cannot be read, has a malformed line or is not sorted by tick
+         */
+        private boolean readArrival() throws IOException {
+            String line;
+            while ((line = readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] values = line.split("\\s*,\\s*");
+                if (values.length != 3) {
+                    throw new IOException("expected tick,direction,road in " + file + " but got: " + line);
+                }
+                try {
+                    Ticks ticks = queues.get(key(Direction.valueOf(values[1]), Integer.parseInt(values[2])));
+                    long tick = Long.parseLong(values[0]);
+                    if (tick < readTick) {
+                        throw new IOException("the lines of " + file + " must be sorted by tick but got: " + line);
+                    }
+                    readTick = tick;
+                    if (ticks != null) {
+                        ticks.add(tick);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("expected tick,direction,road in " + file + " but got: " + line, e);
+                }
+                return true;
+            }
+            finished = true;
+            return false;
+        }
+
+        /**
+         * reads the next line of the file, reading the next chunk when the line does not end in the buffer.
+         * @return the line without its line break, null at the end of the file
+         * @throws IOException if a line does not fit in a chunk
+         */
+        private String readLine() throws IOException {
+            while (true) {
+                for (int i = start; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        String line = new String(buffer, start, i - start, StandardCharsets.US_ASCII);
+                        start = i + 1;
+                        return line;
+                    }
+                }
+                if (end) {
+                    if (start == limit) {
+                        return null;
+                    }
+                    String line = new String(buffer, start, limit - start, StandardCharsets.US_ASCII);
+                    start = limit;
+                    return line;
+                }
+                if (start == 0 && limit == buffer.length) {
+                    throw new IOException("line longer than " + buffer.length + " bytes in " + file);
+                }
+                readChunk();
+            }
+        }
+
+        /**
+         * keeps the unread part of the buffer and fills the rest from the file.
+         * the file is closed once its end is reached.
+         * @throws IOException
+         */
+        private void readChunk() throws IOException {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            start = 0;
+            int read = channel == null ? -1 : channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+            if (read < 0) {
+                end = true;
+                close();
+            } else {
+                limit += read;
+            }
+        }
+
+        /**
+         * closes the file. a closed trace reads no more cars, the cars already read are still replayed.
+         */
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing more is read from it
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * the ticks of the cars read for a road end and not replayed yet, in the order they were read.
+     */
+    static class Ticks {
+        private long[] values = new long[16];
+        private int head = 0;
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(long tick) {
+            if (size == values.length) {
+                long[] grown = Arrays.copyOfRange(values, head, head + size * 2);
+                System.arraycopy(values, 0, grown, values.length - head, head);
+                values = grown;
+                head = 0;
+            }
+            values[(head + size) % values.length] = tick;
+            size++;
+        }
+
+        long poll() {
+            long tick = values[head];
+            head = (head + 1) % values.length;
+            size--;
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package game;
+
+/**
+ * chooses the traffic lights of an intersection according to a synthesized spectra controller.
+ *
+ */
+public interface TrafficController {
+
+    /**
+     * advances the controller by one step.
+     * the first step selects the initial state of the controller,
+     * every following step selects one of the states the controller allows
+     * for the given environment values.
+     * @param verticalWaiting number of cars waiting in the vertical road
+     * @param horizontalWaiting number of cars waiting in the horizontal road
+     * @param verticalCrossing is a vertical car crossing the intersection
+     * @param horizontalCrossing is a horizontal car crossing the intersection
+     * @return the selected system state
+     */
+    SystemState step(int verticalWaiting, int horizontalWaiting,
+                     boolean verticalCrossing, boolean horizontalCrossing);
+}
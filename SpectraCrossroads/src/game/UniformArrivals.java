@@ -0,0 +1,32 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * the ticks between two cars are drawn uniformly from the interval, both ends included.
+ * the default arrivals of the board.
+ */
+public class UniformArrivals implements ArrivalProcess {
+    private SplittableRandom random;
+    private int min;
+    private int max;
+
+    /**
+     * constructor.
+     * @param random
+     */
+    public UniformArrivals(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public long nextArrival(long tick) {
+        return tick + random.nextInt((max + 1) - min) + min;
+    }
+
+    @Override
+    public void setInterval(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+}
@@ -0,0 +1,230 @@
+package game;
+
+/**
+ * statistics of the cars of a run, collected car by car as the cars enter intersections and leave the board:
+ * the delay of a car at an intersection (ticks from joining the queue until entering the intersection,
+ * 0 for a car that never stopped), the travel time of a car from entering until leaving the board,
+ * the cars entering intersections in each direction, in every simulated minute of the board,
+ * the length of the queue of every entrance after every tick, in each direction,
+ * and the ticks the lights of the intersections spent in each color.
+ * the times, counts and lengths are kept in LogHistograms, so the memory does not grow with the length of the run.
+ * every region of the board collects its own statistics, GameBoard.getVehicleStatistics adds them up.
+ * the cars of a minute are counted by every region and recorded once for the whole board when the minute ends,
+ * a minute that has not ended yet is not recorded.
+ */
+public class VehicleStatistics {
+    /**
+     * the ticks of a simulated minute.
+     */
+    static final int MINUTE_TICKS = 60000 / Simulation.TICK_MILLIS;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Color[] COLORS = Color.values();
+    private long ticks = 0;
+    private LogHistogram delay = new LogHistogram();
+    private LogHistogram travel = new LogHistogram();
+    private long[] passed = new long[DIRECTIONS.length];
+    private long[] minutePassed = new long[DIRECTIONS.length];
+    private LogHistogram[] throughput = histograms();
+    private LogHistogram[] queue = histograms();
+    private long[] verticalLightTicks = new long[COLORS.length];
+    private long[] horizontalLightTicks = new long[COLORS.length];
+
+    /**
+     * a car entered an intersection.
+     * @param direction the direction the car drives in
+     * @param delayTicks the ticks it waited in the queue
+     */
+    void recordEntry(Direction direction, long delayTicks) {
+        passed[direction.ordinal()]++;
+        minutePassed[direction.ordinal()]++;
+        delay.record(delayTicks);
+    }
+
+    /**
+     * a car left the board.
+     * @param travelTicks the ticks since it entered the board
+     */
+    void recordExit(long travelTicks) {
+        travel.record(travelTicks);
+    }
+
+    /**
+     * records the cars waiting in a queue after a tick.
+     * @param direction the direction of the queue
+     * @param waiting
+     */
+    void recordQueue(Direction direction, int waiting) {
+        queue[direction.ordinal()].record(waiting);
+    }
+
+    /**
+     * moves the cars counted in the current minute by another part of the board to this one.
+     * @param other
+     */
+    void takeMinute(VehicleStatistics other) {
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            minutePassed[direction] += other.minutePassed[direction];
+            other.minutePassed[direction] = 0;
+        }
+    }
+
+    /**
+     * ends a simulated minute: records the cars that entered intersections in each direction during it
+     * and starts counting the next one.
+     */
+    void recordMinute() {
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            throughput[direction].record(minutePassed[direction]);
+            minutePassed[direction] = 0;
+        }
+    }
+
+    /**
+     * records the lights of an intersection during a tick.
+     * @param vertical
+     * @param horizontal
+     */
+    void recordLights(Color vertical, Color horizontal) {
+        verticalLightTicks[vertical.ordinal()]++;
+        horizontalLightTicks[horizontal.ordinal()]++;
+    }
+
+    /**
+     * adds the statistics of another part of the board.
+     * @param other
+     */
+    void add(VehicleStatistics other) {
+        delay.add(other.delay);
+        travel.add(other.travel);
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            passed[direction] += other.passed[direction];
+            minutePassed[direction] += other.minutePassed[direction];
+            throughput[direction].add(other.throughput[direction]);
+            queue[direction].add(other.queue[direction]);
+        }
+        for (int color = 0; color < COLORS.length; color++) {
+            verticalLightTicks[color] += other.verticalLightTicks[color];
+            horizontalLightTicks[color] += other.horizontalLightTicks[color];
+        }
+    }
+
+    void setTicks(long ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * @return the ticks of the run
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the delays of the cars at the intersections, in ticks
+     */
+    public LogHistogram getDelay() {
+        return delay;
+    }
+
+    /**
+     * @return the travel times of the cars that left the board, in ticks
+     */
+    public LogHistogram getTravel() {
+        return travel;
+    }
+
+    /**
+     * @param direction
+     * @return the number of cars that entered an intersection driving in the direction
+     */
+    public long getPassed(Direction direction) {
+        return passed[direction.ordinal()];
+    }
+
+    /**
+     * @param direction
+     * @return the number of cars driving in the direction that entered an intersection per simulated minute,
+     * averaged over the whole run
+     */
+    public double getThroughputPerMinute(Direction direction) {
+        double minutes = ticks * Simulation.TICK_MILLIS / 60000.0;
+        return minutes == 0 ? 0 : passed[direction.ordinal()] / minutes;
+    }
+
+    /**
+     * @param direction
+     * @return the number of cars driving in the direction that entered an intersection in each simulated minute
+     */
+    public LogHistogram getThroughput(Direction direction) {
+        return throughput[direction.ordinal()];
+    }
+
+    /**
+     * @param direction
+     * @return the number of cars waiting at each entrance in the direction after each tick
+     */
+    public LogHistogram getQueue(Direction direction) {
+        return queue[direction.ordinal()];
+    }
+
+    /**
+     * @param direction
+     * @return the most cars that waited at a single entrance in the direction
+     */
+    public int getMaxQueue(Direction direction) {
+        return (int) queue[direction.ordinal()].getMax();
+    }
+
+    /**
+     * @param color
+     * @return the share of the time the vertical lights showed the color, between 0 and 1
+     */
+    public double getVerticalLightShare(Color color) {
+        return share(verticalLightTicks, color);
+    }
+
+    /**
+     * @param color
+     * @return the share of the time the horizontal lights showed the color, between 0 and 1
+     */
+    public double getHorizontalLightShare(Color color) {
+        return share(horizontalLightTicks, color);
+    }
+
+    private static LogHistogram[] histograms() {
+        LogHistogram[] histograms = new LogHistogram[DIRECTIONS.length];
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            histograms[direction] = new LogHistogram();
+        }
+        return histograms;
+    }
+
+    private static double share(long[] lightTicks, Color color) {
+        long total = 0;
+        for (long colorTicks : lightTicks) {
+            total += colorTicks;
+        }
+        return total == 0 ? 0 : (double) lightTicks[color.ordinal()] / total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("delay (ticks): %s%n", delay));
+        result.append(String.format("travel (ticks): %s%n", travel));
+        for (Direction direction : DIRECTIONS) {
+            result.append(String.format("%s throughput (cars/min): %s%n", direction.toString().toLowerCase(),
+                    getThroughput(direction)));
+        }
+        for (Direction direction : DIRECTIONS) {
+            result.append(String.format("%s queue (cars): %s%n", direction.toString().toLowerCase(),
+                    getQueue(direction)));
+        }
+        result.append(String.format("lights: vertical green %.1f%% off %.1f%% red %.1f%%,"
+                        + " horizontal green %.1f%% off %.1f%% red %.1f%%",
+                100 * getVerticalLightShare(Color.GREEN), 100 * getVerticalLightShare(Color.OFF),
+                100 * getVerticalLightShare(Color.RED), 100 * getHorizontalLightShare(Color.GREEN),
+                100 * getHorizontalLightShare(Color.OFF), 100 * getHorizontalLightShare(Color.RED)));
+        return result.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package game;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * compiles the controller of out/ for a small maxCars once, writes it and loads it back.
+ */
+public class CompiledControllerTest {
+    private static final int MAX_CARS = 2;
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+    private static ControllerCompiler compiler;
+    private static File table;
+
+    @BeforeClass
+    public static void compile() throws IOException {
+        compiler = new ControllerCompiler("out/", MAX_CARS);
+        compiler.compile();
+        table = folder.newFile("controller.table");
+        compiler.write(table.getPath());
+    }
+
+    @Test
+    public void loadsTheTableThatWasWritten() throws IOException {
+        CompiledController controller = CompiledController.load(table.getPath(), new SplittableRandom(1));
+        assertEquals(MAX_CARS, controller.getMaxCars());
+        assertEquals(compiler.getRowCount(), controller.getRowCount());
+    }
+
+    @Test
+    public void forksStepLikeTheLoadedController() throws IOException {
+        CompiledController loaded = CompiledController.load(table.getPath(), new SplittableRandom(7));
+        CompiledController fork = loaded.fork(new SplittableRandom(7));
+        SpecInputs inputs = new SpecInputs(3, MAX_CARS);
+        for (int step = 0; step < 2000; step++) {
+            SystemState expected = loaded.step(inputs.vertical, inputs.horizontal,
+                    inputs.verticalCrossing, inputs.horizontalCrossing);
+            SystemState actual = fork.step(inputs.vertical, inputs.horizontal,
+                    inputs.verticalCrossing, inputs.horizontalCrossing);
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(inputs.vertical, actual.getVerticalQueue());
+            assertEquals(inputs.horizontal, actual.getHorizontalQueue());
+            inputs.next(actual);
+        }
+    }
+
+    @Test
+    public void rejectsATruncatedTable() throws IOException {
+        byte[] bytes = Files.readAllBytes(table.toPath());
+        for (int length : new int[] {0, 10, 20, bytes.length / 2, bytes.length - 1}) {
+            assertCorrupt(Arrays.copyOf(bytes, length));
+        }
+    }
+
+    @Test
+    public void rejectsCountsThatDoNotFitInTheFile() throws IOException {
+        byte[] bytes = Files.readAllBytes(table.toPath());
+        // the header is magic, version, maxCars and the number of system states
+        for (int count : new int[] {-1, Integer.MAX_VALUE, bytes.length}) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(12, count);
+            assertCorrupt(corrupt);
+        }
+        byte[] corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putInt(8, -1);
+        assertCorrupt(corrupt);
+    }
+
+    @Test
+    public void rejectsSuccessorsOutsideTheTable() throws IOException {
+        byte[] bytes = Files.readAllBytes(table.toPath());
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 4, compiler.getRowCount());
+        assertCorrupt(bytes);
+    }
+
+    private static void assertCorrupt(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        try {
+            CompiledController.load(file.getPath(), new SplittableRandom(1));
+            fail("loaded a corrupt table of " + bytes.length + " bytes");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("corrupt table")
+                    || e.getMessage().endsWith("is not a compiled controller table"));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package game;
+
+import net.sf.javabdd.BDD;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * compares the export of the controller in out/ with the symbolic controller it was copied from.
+ */
+public class ControllerExportTest {
+    private static ControllerExport export;
+    private static SpectraStrategy strategy;
+
+    @BeforeClass
+    public static void load() throws IOException {
+        export = ControllerExport.of("out/");
+        strategy = SpectraStrategy.of("out/");
+    }
+
+    @Test
+    public void startsInTheInitialStateOfTheController() {
+        assertEquals(strategy.getLineMax(), export.getMaxCars());
+        assertEquals(strategy.getEnvInputs(), export.getEnvInputs());
+        assertEquals(strategy.getInitialKey(), export.getInitialState());
+        assertEquals(strategy.getInitialSystemState().toString(), export.decode(export.getInitialState()).toString());
+    }
+
+    @Test
+    public void hasTheSuccessorsOfTheSymbolicController() {
+        SplittableRandom random = new SplittableRandom(9);
+        SpecInputs inputs = new SpecInputs(9, export.getMaxCars());
+        ControllerExport.Successors successors = new ControllerExport.Successors();
+        BDD state = strategy.getInitialState().id();
+        long key = export.getInitialState();
+        int compared = 0;
+        for (int step = 0; step < 2000; step++) {
+            inputs.next(export.decode(key));
+            SuccessorCache.Choices choices = strategy.getSystemChoices(state, inputs.envIndex(), false, random);
+            export.successors(key, inputs.envIndex(), successors);
+
+            long[] expected = choices.keys.clone();
+            long[] actual = Arrays.copyOf(successors.states, successors.count);
+            Arrays.sort(expected);
+            Arrays.sort(actual);
+            assertArrayEquals("successors of " + export.decode(key) + " for input " + inputs.envIndex(),
+                    expected, actual);
+            assertTrue("no successor of " + export.decode(key), choices.size() > 0);
+            for (int i = 0; i < choices.size(); i++) {
+                assertEquals(choices.systemStates[i].toString(), export.decode(choices.keys[i]).toString());
+            }
+            compared += choices.size();
+
+            int picked = random.nextInt(choices.size());
+            state.free();
+            state = choices.states[picked].id();
+            key = choices.keys[picked];
+            choices.free();
+        }
+        state.free();
+        assertTrue(compared >= 2000);
+    }
+}
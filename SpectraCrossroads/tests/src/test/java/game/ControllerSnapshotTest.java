@@ -0,0 +1,128 @@
+package game;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * writes the export of the controller in out/ to a snapshot and loads it back.
+ */
+public class ControllerSnapshotTest {
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+    private static ControllerExport export;
+    private static File snapshot;
+
+    @BeforeClass
+    public static void write() throws IOException {
+        export = ControllerExport.of("out/");
+        snapshot = folder.newFile("controller.snapshot");
+        export.write(snapshot.getPath());
+    }
+
+    @Test
+    public void loadsTheExportThatWasWritten() throws IOException {
+        ControllerExport loaded = ControllerExport.load(snapshot.getPath());
+        assertEquals(export.getMaxCars(), loaded.getMaxCars());
+        assertEquals(export.getEnvInputs(), loaded.getEnvInputs());
+        assertEquals(export.getNodeCount(), loaded.getNodeCount());
+        assertEquals(export.getInitialState(), loaded.getInitialState());
+
+        File again = folder.newFile();
+        loaded.write(again.getPath());
+        assertArrayEquals(Files.readAllBytes(snapshot.toPath()), Files.readAllBytes(again.toPath()));
+    }
+
+    @Test
+    public void stepsLikeTheExport() throws IOException {
+        ControllerExport loaded = ControllerExport.load(snapshot.getPath());
+        SplittableRandom random = new SplittableRandom(4);
+        SpecInputs inputs = new SpecInputs(4, export.getMaxCars());
+        ControllerExport.Successors expected = new ControllerExport.Successors();
+        ControllerExport.Successors actual = new ControllerExport.Successors();
+        long state = export.getInitialState();
+        for (int step = 0; step < 5000; step++) {
+            inputs.next(export.decode(state));
+            export.successors(state, inputs.envIndex(), expected);
+            loaded.successors(state, inputs.envIndex(), actual);
+            assertTrue(expected.count > 0);
+            assertArrayEquals(Arrays.copyOf(expected.states, expected.count), Arrays.copyOf(actual.states, actual.count));
+            state = expected.states[random.nextInt(expected.count)];
+            assertEquals(export.decode(state).toString(), loaded.decode(state).toString());
+        }
+    }
+
+    @Test
+    public void rejectsATruncatedSnapshot() throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        for (int length : new int[] {0, 6, 20, 40, bytes.length / 2, bytes.length - 1}) {
+            // a count read before the end is checked against the bytes left, the rest runs out of bytes
+            assertCorrupt(Arrays.copyOf(bytes, length), "");
+        }
+    }
+
+    @Test
+    public void rejectsCountsThatDoNotFitInTheFile() throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        // maxCars
+        ByteBuffer.wrap(bytes).putInt(8, ControllerExport.MAX_CARS + 1);
+        assertCorrupt(bytes, "maxCars");
+
+        bytes = Files.readAllBytes(snapshot.toPath());
+        // the number of variables
+        ByteBuffer.wrap(bytes).putInt(32, Integer.MAX_VALUE);
+        assertCorrupt(bytes, "variables");
+
+        bytes = Files.readAllBytes(snapshot.toPath());
+        // the number of nodes, in front of the root and the three node arrays
+        int nodes = export.getNodeCount();
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 12 * nodes - 8, nodes + 1);
+        assertCorrupt(bytes, "node count");
+    }
+
+    @Test
+    public void rejectsNodesThatPointForward() throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        int nodes = export.getNodeCount();
+        // the high child of the first inner node
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 4 * nodes + 4 * ControllerExport.TRUE + 4, nodes - 1);
+        assertCorrupt(bytes, "node " + (ControllerExport.TRUE + 1) + " is damaged");
+    }
+
+    @Test
+    public void rejectsAFileThatIsNotASnapshot() throws IOException {
+        File table = folder.newFile();
+        Files.write(table.toPath(), ByteBuffer.allocate(64).putInt(CompiledController.MAGIC).array());
+        try {
+            ControllerExport.load(table.getPath());
+            fail("the table was loaded as a snapshot");
+        } catch (IOException e) {
+            assertEquals(table.getPath() + " is not a controller snapshot", e.getMessage());
+        }
+    }
+
+    private static void assertCorrupt(byte[] bytes, String reason) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        try {
+            ControllerExport.load(file.getPath());
+            fail("loaded a snapshot that should be corrupt: " + reason);
+        } catch (IOException e) {
+            String prefix = "corrupt snapshot " + file.getPath() + ": ";
+            assertTrue(e.getMessage(), e.getMessage().startsWith(prefix) && e.getMessage().contains(reason));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package game;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * runs the same seeded headless simulation on the tick engine and on the event engine.
+ * the engines draw their random numbers in a different order, so their totals agree within a tolerance only.
+ */
+public class EngineComparisonTest {
+    private static final long TICKS = 100000;
+
+    @Test
+    public void enginesAgreeOnTheTotals() throws Exception {
+        RunStatistics tick = runTicks(5);
+        RunStatistics event = runEvents(5);
+        assertEquals(TICKS, tick.getTicks());
+        assertEquals(TICKS, event.getTicks());
+        assertTrue(tick.getPassedVehicles() > 1000);
+        assertClose("arrived cars", tick.getArrivedVehicles(), event.getArrivedVehicles(), 0.01);
+        assertClose("passed cars", tick.getPassedVehicles(), event.getPassedVehicles(), 0.02);
+        assertClose("mean wait", tick.getMeanWaitTicks(), event.getMeanWaitTicks(), 0.1);
+    }
+
+    @Test
+    public void aSeedRepeatsTheRun() throws Exception {
+        assertEquals(runTicks(2).toString(), runTicks(2).toString());
+        assertEquals(runEvents(2).toString(), runEvents(2).toString());
+    }
+
+    private static RunStatistics runTicks(long seed) throws IOException {
+        try (Simulation simulation = new Simulation(config(seed, "tick"))) {
+            for (long i = 0; i < TICKS; i++) {
+                simulation.step();
+            }
+            return simulation.getStatistics();
+        }
+    }
+
+    private static RunStatistics runEvents(long seed) throws IOException {
+        try (EventSimulation simulation = new EventSimulation(config(seed, "event"))) {
+            simulation.advance(TICKS);
+            return simulation.getStatistics();
+        }
+    }
+
+    private static SimulationConfig config(long seed, String engine) throws IOException {
+        return SimulationConfig.fromArgs(new String[] {"controller-export=true", "seed=" + seed,
+                "ticks=" + TICKS, "engine=" + engine});
+    }
+
+    private static void assertClose(String what, double expected, double actual, double tolerance) {
+        assertTrue(what + ": tick engine " + expected + ", event engine " + actual,
+                Math.abs(expected - actual) <= tolerance * Math.abs(expected));
+    }
+}
@@ -0,0 +1,86 @@
+package game;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest {
+
+    @Test
+    public void isEmptyBeforeTheFirstValue() {
+        LogHistogram histogram = new LogHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void hasExactPercentilesBelow128() {
+        LogHistogram histogram = new LogHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(1, histogram.getPercentile(1));
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(90, histogram.getPercentile(90));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    public void keepsPercentilesWithin1Of64() {
+        SplittableRandom random = new SplittableRandom(11);
+        LogHistogram histogram = new LogHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // spreads the values over many powers of 2
+            values[i] = random.nextLong(1L << random.nextInt(1, 50));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(percentile);
+            assertTrue(percentile + "th percentile " + estimate + " is below " + exact, estimate >= exact);
+            assertTrue(percentile + "th percentile " + estimate + " is too far above " + exact,
+                    estimate - exact <= exact / 64);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+    }
+
+    @Test
+    public void recordsNegativeValuesAs0() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(-5);
+        histogram.record(4);
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(2, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void addsTheValuesOfAnotherHistogram() {
+        LogHistogram low = new LogHistogram();
+        LogHistogram high = new LogHistogram();
+        for (int value = 0; value < 50; value++) {
+            low.record(value);
+            high.record(1000 + value);
+        }
+        low.add(high);
+        assertEquals(100, low.getCount());
+        assertEquals((49 * 50 / 2 + 1000 * 50 + 49 * 50 / 2) / 100.0, low.getMean(), 1e-9);
+        assertEquals(49, low.getPercentile(50));
+        assertTrue(low.getPercentile(51) >= 1000);
+        assertEquals(1049, low.getMax());
+        assertEquals(50, high.getCount());
+    }
+}
@@ -0,0 +1,108 @@
+package game;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoadQueueTest {
+
+    @Test
+    public void keepsTheOrderOfTheCarsWhenTheRingWrapsAndGrows() {
+        RoadQueue queue = new RoadQueue(Color.RED, Direction.EAST);
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+        int next = 0;
+        // moves the head into the middle of the ring, so the queue wraps before it grows
+        for (int round = 0; round < 6; round++) {
+            for (int i = 0; i < 11; i++, next++) {
+                queue.add(next, -next, 1000 + next);
+                expected.add(next);
+            }
+            for (int i = 0; i < 7; i++) {
+                queue.removeFirst();
+                expected.poll();
+            }
+            assertSameCars(expected, queue);
+        }
+        while (queue.size() > 0) {
+            queue.removeFirst();
+            expected.poll();
+            assertSameCars(expected, queue);
+        }
+    }
+
+    @Test
+    public void movesTheFirstCarWithItsEntryTick() {
+        RoadQueue east = new RoadQueue(Color.GREEN, Direction.EAST);
+        RoadQueue south = new RoadQueue(Color.RED, Direction.SOUTH);
+        east.add(4, 6, 17);
+        east.add(2, 6, 19);
+        east.setWaiting(0, 30);
+        assertEquals(30, east.getStopped(0));
+
+        east.moveFirstTo(south);
+        assertEquals(1, east.size());
+        assertEquals(0, east.getWaitingCount());
+        assertEquals(19, east.getEntered(0));
+        assertEquals(1, south.size());
+        assertEquals(4, south.getX(0));
+        assertEquals(6, south.getY(0));
+        assertEquals(17, south.getEntered(0));
+        // the car has not waited in its new queue yet
+        assertFalse(south.isWaiting(0));
+        assertEquals(-1, south.getStopped(0));
+    }
+
+    @Test
+    public void countsEveryWaitingCarOnce() {
+        RoadQueue queue = new RoadQueue(Color.RED, Direction.NORTH);
+        for (int i = 0; i < 40; i++) {
+            queue.add(0, 100 + 4 * i, i);
+        }
+        queue.setWaiting(0, 50);
+        queue.setWaiting(0, 60);
+        queue.setWaiting(3, 60);
+        assertEquals(2, queue.getWaitingCount());
+        assertEquals(50, queue.getStopped(0));
+        assertTrue(queue.isWaiting(3));
+
+        queue.removeFirst();
+        assertEquals(1, queue.getWaitingCount());
+        queue.removeFirst();
+        queue.removeFirst();
+        queue.removeFirst();
+        assertEquals(0, queue.getWaitingCount());
+    }
+
+    @Test
+    public void drivesACarOnlyWhenItsDelayRunsOut() {
+        RoadQueue queue = new RoadQueue(Color.GREEN, Direction.WEST);
+        queue.add(50, 8, 0);
+        queue.drive(0, true);
+        assertEquals(48, queue.getX(0));
+        assertEquals(-48, queue.getProgress(0));
+
+        queue.drive(0, false);
+        for (int i = 0; i < 5; i++) {
+            queue.drive(0, true);
+            assertEquals(48, queue.getX(0));
+        }
+        queue.drive(0, true);
+        assertEquals(46, queue.getX(0));
+    }
+
+    private static void assertSameCars(ArrayDeque<Integer> expected, RoadQueue queue) {
+        assertEquals(expected.size(), queue.size());
+        Iterator<Integer> cars = expected.iterator();
+        for (int car = 0; car < queue.size(); car++) {
+            int id = cars.next();
+            assertEquals(id, queue.getX(car));
+            assertEquals(-id, queue.getY(car));
+            assertEquals(1000 + id, queue.getEntered(car));
+        }
+    }
+}
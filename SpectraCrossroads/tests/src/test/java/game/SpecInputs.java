@@ -0,0 +1,57 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * random environment inputs that keep the assumptions of the spec,
+ * so any controller synthesized from it has a successor for them:
+ * a queue shrinks and a car starts to cross only while the light of its road says go.
+ */
+class SpecInputs {
+    private SplittableRandom random;
+    private int maxCars;
+    int vertical = 0;
+    int horizontal = 0;
+    boolean verticalCrossing = false;
+    boolean horizontalCrossing = false;
+
+    /**
+     * constructor.
+     * @param seed
+     * @param maxCars the longest queue to report
+     */
+    SpecInputs(long seed, int maxCars) {
+        this.random = new SplittableRandom(seed);
+        this.maxCars = maxCars;
+    }
+
+    /**
+     * picks the inputs of the next step.
+     * @param state the state the controller is in
+     */
+    void next(SystemState state) {
+        boolean verticalGo = go(state.getVerticalLight());
+        boolean horizontalGo = go(state.getHorizontalLight());
+        vertical = nextQueue(vertical, verticalGo);
+        horizontal = nextQueue(horizontal, horizontalGo);
+        verticalCrossing = verticalCrossing ? random.nextBoolean() : verticalGo && random.nextBoolean();
+        horizontalCrossing = horizontalCrossing ? random.nextBoolean() : horizontalGo && random.nextBoolean();
+    }
+
+    /**
+     * @return the index of the inputs, see CompiledController.envIndex
+     */
+    int envIndex() {
+        return CompiledController.envIndex(maxCars, vertical, horizontal, verticalCrossing, horizontalCrossing);
+    }
+
+    private int nextQueue(int cars, boolean go) {
+        int min = go ? Math.max(0, cars - 1) : cars;
+        int max = Math.min(maxCars, cars + 1);
+        return min + random.nextInt(max - min + 1);
+    }
+
+    private static boolean go(Color light) {
+        return light == Color.GREEN || light == Color.OFF;
+    }
+}
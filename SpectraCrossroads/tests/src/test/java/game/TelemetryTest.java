@@ -0,0 +1,142 @@
+package game;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TelemetryTest {
+    private static final int INTERSECTIONS = 3;
+    // more records than fit in the buffers of the writer, so the writer thread has to catch up
+    private static final int TICKS = 7000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dumpsTheRecordsThatWereWritten() throws IOException {
+        File file = folder.newFile();
+        List<String> expected = write(file);
+
+        List<String> lines = dump(file.getPath());
+        assertEquals(1 + TICKS * INTERSECTIONS, lines.size());
+        assertTrue(lines.get(0).startsWith("tick,intersection,passed,"));
+        assertEquals(expected, lines.subList(1, lines.size()));
+    }
+
+    @Test
+    public void dumpsASingleIntersection() throws IOException {
+        File file = folder.newFile();
+        List<String> expected = write(file);
+
+        List<String> lines = dump(file.getPath(), "1");
+        List<String> only = new ArrayList<>();
+        for (String line : expected) {
+            if (line.split(",")[1].equals("1")) {
+                only.add(line);
+            }
+        }
+        assertEquals(only, lines.subList(1, lines.size()));
+    }
+
+    @Test
+    public void dropsRecordsAfterClose() throws IOException {
+        File file = folder.newFile();
+        SystemState state = new SystemState(Color.GREEN, Color.RED, 1, 2, 0, 0, false, false);
+        TelemetryWriter telemetry = new TelemetryWriter(file.getPath(), 1);
+        telemetry.record(5, 0, 1, new int[] {40000, 0, 0, 0}, state, TelemetryWriter.FLAG_STEPPED);
+        telemetry.close();
+        telemetry.record(6, 0, 2, new int[] {0, 0, 0, 0}, state, 0);
+        telemetry.close();
+
+        List<String> lines = dump(file.getPath());
+        // the waiting cars are capped to a short
+        assertEquals(Arrays.asList("5,0,1,32767,0,0,0,GREEN,RED,1,2,0,0,true,false,false"),
+                lines.subList(1, lines.size()));
+        assertEquals(TelemetryWriter.HEADER_SIZE + TelemetryWriter.RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void rejectsATruncatedRecord() throws IOException {
+        File file = folder.newFile();
+        write(file);
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(truncated.length() - 5);
+        }
+        try {
+            dump(file.getPath());
+            fail("the truncated record was dumped");
+        } catch (IOException e) {
+            assertEquals("telemetry file ends in the middle of a record", e.getMessage());
+        }
+    }
+
+    /**
+     * writes random records.
+     * @param file
+     * @return the lines TelemetryDump should print for them
+     * @throws IOException
+     */
+    private static List<String> write(File file) throws IOException {
+        SplittableRandom random = new SplittableRandom(5);
+        Color[] colors = Color.values();
+        List<String> lines = new ArrayList<>();
+        long[] passed = new long[INTERSECTIONS];
+        int[] waiting = new int[4];
+        try (TelemetryWriter telemetry = new TelemetryWriter(file.getPath(), INTERSECTIONS)) {
+            for (long tick = 0; tick < TICKS; tick++) {
+                for (int intersection = 0; intersection < INTERSECTIONS; intersection++) {
+                    passed[intersection] += random.nextInt(2);
+                    for (int direction = 0; direction < 4; direction++) {
+                        waiting[direction] = random.nextInt(200);
+                    }
+                    SystemState state = new SystemState(colors[random.nextInt(3)], colors[random.nextInt(3)],
+                            random.nextInt(31), random.nextInt(31), random.nextInt(4), random.nextInt(4),
+                            false, false);
+                    int flags = random.nextInt(8);
+                    telemetry.record(tick, intersection, passed[intersection], waiting, state, flags);
+                    lines.add(tick + "," + intersection + "," + passed[intersection]
+                            + "," + waiting[0] + "," + waiting[1] + "," + waiting[2] + "," + waiting[3]
+                            + "," + state.getVerticalLight() + "," + state.getHorizontalLight()
+                            + "," + state.getVerticalQueue() + "," + state.getHorizontalQueue()
+                            + "," + state.getVerticalBlinks() + "," + state.getHorizontalBlinks()
+                            + "," + ((flags & TelemetryWriter.FLAG_STEPPED) != 0)
+                            + "," + ((flags & TelemetryWriter.FLAG_VERTICAL_CROSSING) != 0)
+                            + "," + ((flags & TelemetryWriter.FLAG_HORIZONTAL_CROSSING) != 0));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * runs TelemetryDump.
+     * @param args
+     * @return the lines it printed
+     * @throws IOException
+     */
+    private static List<String> dump(String... args) throws IOException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            TelemetryDump.main(args);
+        } finally {
+            System.setOut(out);
+        }
+        return Arrays.asList(printed.toString().split("\\R"));
+    }
+}
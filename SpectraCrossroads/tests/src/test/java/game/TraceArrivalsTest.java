@@ -0,0 +1,129 @@
+package game;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceArrivalsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ticksGrowWhileTheRingWraps() {
+        TraceArrivals.Ticks ticks = new TraceArrivals.Ticks();
+        long added = 0;
+        long polled = 0;
+        // moves the head into the middle of the ring, so the ticks wrap before they grow
+        for (int round = 0; round < 8; round++) {
+            for (int i = 0; i < 13; i++) {
+                ticks.add(added++);
+            }
+            for (int i = 0; i < 9; i++) {
+                assertEquals(polled++, ticks.poll());
+            }
+        }
+        while (!ticks.isEmpty()) {
+            assertEquals(polled++, ticks.poll());
+        }
+        assertEquals(added, polled);
+    }
+
+    @Test
+    public void replaysTheCarsOfEveryRoadEnd() throws IOException {
+        File file = write("# tick,direction,road",
+                "3,EAST,0",
+                "3,EAST,0",
+                "",
+                "5,SOUTH,1",
+                "7,WEST,4",
+                "10,EAST,0",
+                "500,SOUTH,1");
+        TraceArrivals.Trace trace = new TraceArrivals.Trace(file.getPath());
+        TraceArrivals east = new TraceArrivals(trace, Direction.EAST, 0);
+        TraceArrivals south = new TraceArrivals(trace, Direction.SOUTH, 1);
+
+        List<List<Long>> cars = replay(1000, east, south);
+        // the second car of tick 3 arrives one tick later, the car of the unknown road end is skipped
+        assertEquals(Arrays.asList(3L, 4L, 10L), cars.get(0));
+        assertEquals(Arrays.asList(5L, 500L), cars.get(1));
+        assertTrue(trace.isFinished());
+        assertEquals(Long.MAX_VALUE, east.nextArrival(1000));
+    }
+
+    @Test
+    public void aRoadEndWithoutCarsDoesNotReadAhead() throws IOException {
+        String[] lines = new String[5001];
+        for (int i = 0; i < 5000; i++) {
+            lines[i] = i + ",EAST,0";
+        }
+        lines[5000] = "9000,SOUTH,0";
+        File file = write(lines);
+        TraceArrivals.Trace trace = new TraceArrivals.Trace(file.getPath());
+        TraceArrivals east = new TraceArrivals(trace, Direction.EAST, 0);
+        TraceArrivals south = new TraceArrivals(trace, Direction.SOUTH, 0);
+
+        assertEquals(0, south.nextArrival(-1));
+        assertFalse(south.bringsCar());
+        assertTrue(trace.getReadTick() <= 1);
+
+        List<List<Long>> cars = replay(10000, east, south);
+        assertEquals(5000, cars.get(0).size());
+        assertEquals(Arrays.asList(9000L), cars.get(1));
+    }
+
+    @Test
+    public void rejectsAnUnsortedTrace() throws IOException {
+        File file = write("5,EAST,0", "9,EAST,0", "7,EAST,0");
+        TraceArrivals east = new TraceArrivals(file.getPath(), Direction.EAST, 0);
+        try {
+            replay(100, east);
+            fail("the unsorted line was replayed");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("must be sorted by tick"));
+        }
+    }
+
+    /**
+     * asks the road ends for their cars like the game board does.
+     * @return the arrival ticks of the cars of every road end
+     */
+    private static List<List<Long>> replay(long ticks, TraceArrivals... ends) {
+        List<List<Long>> cars = new ArrayList<>();
+        long[] next = new long[ends.length];
+        for (int end = 0; end < ends.length; end++) {
+            cars.add(new ArrayList<>());
+            next[end] = ends[end].nextArrival(-1);
+        }
+        for (long tick = 0; tick < ticks; tick++) {
+            for (int end = 0; end < ends.length; end++) {
+                if (next[end] == tick) {
+                    if (ends[end].bringsCar()) {
+                        cars.get(end).add(tick);
+                    }
+                    next[end] = ends[end].nextArrival(tick);
+                }
+            }
+        }
+        return cars;
+    }
+
+    private File write(String... lines) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.US_ASCII);
+        return file;
+    }
+}